@@ -0,0 +1,166 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the call paths that end in a method, by walking the methods referencing it breadth first.
+ * Only the shortest path to each method reached is kept, so a method has at most one path through any other
+ * method, and the paths found first are the shortest ones. A path ends at a method that is not referenced by
+ * any method, or when it reaches {@code maxDepth} callers.
+ * <p>
+ * Callers are sorted by name the first time they are needed, and reused for every path going through them,
+ * so the output is the same from one build to the next.
+ */
+public class CallPathEngine {
+    private static final int[] NO_CALLERS = new int[0];
+
+    private final SymbolTable symbols;
+    private final IntObjectMap<IntSet> methodsReferenced;
+    private final IntObjectMap<int[]> sortedCallers = new IntObjectMap<>();
+    private int maxDepth = 20;
+    private int maxPathsPerMethod = 10;
+
+    public CallPathEngine(Report report) {
+        this.symbols = report.getSymbols();
+        this.methodsReferenced = report.getMethodReferences();
+    }
+
+    /**
+     * @param maxDepth the largest number of callers in a path. Longer paths are cut, and end with «...».
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param maxPathsPerMethod the largest number of paths found for each method. The shortest paths are kept.
+     *                          No paths are found if it is 0.
+     */
+    public void setMaxPathsPerMethod(int maxPathsPerMethod) {
+        this.maxPathsPerMethod = maxPathsPerMethod;
+    }
+
+    /**
+     * Writes the call paths of each of {@code methods}, sorted by name, one path per line.
+     * Paths are written method by method, so only the paths of one method are held in memory.
+     *
+     * @return the number of paths written.
+     */
+    public long writeCallPaths(Collection<String> methods, Writer writer) throws IOException {
+        List<String> sorted = new ArrayList<>(methods);
+        Collections.sort(sorted);
+        long written = 0;
+        for (String method : sorted) {
+            for (String path : getCallPaths(method)) {
+                writer.write(path);
+                writer.write('\n');
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return the call paths ending in {@code method}, shortest first, written as
+     * «method &lt;- caller &lt;- caller of caller».
+     */
+    public List<String> getCallPaths(String method) {
+        int id = symbols.findClassOrMethod(method);
+        if (id == 0) {
+            return Collections.singletonList(method);
+        }
+        List<String> paths = new ArrayList<>();
+        Search search = new Search(id);
+        search.run(paths::add);
+        return paths;
+    }
+
+    /**
+     * @return the methods referencing {@code method}, except itself, sorted by name.
+     */
+    private int[] callersOf(int method) {
+        int[] callers = sortedCallers.get(method);
+        if (callers == null) {
+            IntSet references = methodsReferenced.get(method);
+            callers = references == null ? NO_CALLERS : IntStream.of(references.toArray())
+                    .filter(caller -> caller != method)
+                    .boxed()
+                    .sorted(Comparator.comparing(symbols::name))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            sortedCallers.put(method, callers);
+        }
+        return callers;
+    }
+
+    /**
+     * A breadth first search from one method. Methods are kept in the order they are reached, with the index
+     * of the method they were reached from, so a path is found by following the parents back to the start.
+     */
+    private class Search {
+        private final IntSet seen = new IntSet();
+        private int[] methods = new int[16];
+        private int[] parents = new int[16];
+        private int[] depths = new int[16];
+        private int size;
+
+        Search(int method) {
+            add(method, -1, 0);
+        }
+
+        void run(Consumer<String> consumer) {
+            int found = 0;
+            for (int i = 0; i < size && found < maxPathsPerMethod; i++) {
+                int[] callers = callersOf(methods[i]);
+                if (callers.length == 0 && i > 0) {
+                    consumer.accept(path(i, false));
+                    found++;
+                } else if (depths[i] == maxDepth) {
+                    consumer.accept(path(i, true));
+                    found++;
+                } else {
+                    for (int caller : callers) {
+                        if (seen.add(caller)) {
+                            add(caller, i, depths[i] + 1);
+                        }
+                    }
+                }
+            }
+            if (found == 0 && maxPathsPerMethod > 0) {
+                // Every caller is reached again through a cycle, so there is nowhere the paths end.
+                consumer.accept(path(size - 1, false));
+            }
+        }
+
+        private void add(int method, int parent, int depth) {
+            if (size == methods.length) {
+                methods = Arrays.copyOf(methods, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            seen.add(method);
+            methods[size] = method;
+            parents[size] = parent;
+            depths[size] = depth;
+            size++;
+        }
+
+        private String path(int last, boolean cut) {
+            String[] names = new String[depths[last] + 1];
+            for (int i = last; i >= 0; i = parents[i]) {
+                names[depths[i]] = symbols.name(methods[i]);
+            }
+            String path = String.join(" <- ", names);
+            return cut ? path + " <- ..." : path;
+        }
+    }
+}
@@ -11,6 +11,10 @@ import java.util.stream.Collectors;
 
 import static java.util.Collections.emptySet;
 
+/**
+ * @deprecated enumerates every path, which does not finish on large classpaths. Use {@link CallPathEngine}.
+ */
+@Deprecated
 public abstract class CallTreeReport {
     public static List<CallNode> generateCallTree(Map<String, Set<String>> missing, Map<String, Set<String>> allReferences){
         return getCallNodes(emptySet(), missing.keySet(), allReferences);
@@ -23,7 +27,7 @@ public abstract class CallTreeReport {
            return calls.stream()
                     .map(s -> {
                         Set<String> currentStack = recordCallStack(s, stack);
-                        Set<String> referencesToCall = allReferences.computeIfAbsent(s, s1 -> Collections.<String>emptySet());
+                        Set<String> referencesToCall = allReferences.getOrDefault(s, Collections.<String>emptySet());
                         List<CallNode> callNodes = getCallNodes(currentStack,
                                 referencesToCall.stream()
                                         .filter(s1 -> !currentStack.contains(s1))
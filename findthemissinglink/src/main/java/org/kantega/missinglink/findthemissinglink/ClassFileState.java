@@ -0,0 +1,44 @@
+package org.kantega.missinglink.findthemissinglink;
+
+/**
+ * A class file in a scanned directory, and what was found in it.
+ * Used to only scan the class files that have changed since a directory was last scanned.
+ */
+final class ClassFileState {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String contentHash;
+    private final ScanResult result;
+
+    /**
+     * @param path relative to the directory.
+     */
+    ClassFileState(String path, long size, long lastModified, String contentHash, ScanResult result) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.result = result;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    String getContentHash() {
+        return contentHash;
+    }
+
+    ScanResult getResult() {
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package org.kantega.missinglink.findthemissinglink;
 
+import org.kantega.missinglink.findthemissinglink.ScanMetrics.ArtifactMetrics;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -7,33 +8,45 @@ import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.TypePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
 import static java.util.Objects.nonNull;
@@ -42,170 +55,918 @@ public class ClassFileVisitor {
     private static final Logger log = LoggerFactory.getLogger(ClassFileVisitor.class);
 
     /**
-     * FQN of all classes visited.
+     * Archives smaller than this are parsed on the thread reading them, even with archive parallelism.
      */
-    private final Set<String> classesVisited = new HashSet<>();
+    private static final long PIPELINED_ARCHIVE_SIZE = 1024 * 1024;
 
     /**
-     * FQN of all methods visited.
+     * The most edges of each kind a thread buffers before adding them to the spilled references.
      */
-    private final Set<String> methodsVisited = new HashSet<>();
+    private static final int MAX_THREAD_BUFFERED_EDGES = 8 * 1024;
+
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    /**
+     * The symbols of everything found by this visitor, its own unless it shares a session index.
+     */
+    private SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Everything found by this visitor so far.
+     */
+    private ScanResult result = new ScanResult(symbols);
+
+    /**
+     * The platform classes with the ids of this visitor's symbols, listed when first needed, or null if they have not been.
+     */
+    private PlatformView platform;
+
+    /**
+     * Number of archives scanned in parallel.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Number of threads parsing the class files of one large archive.
+     */
+    private int archiveParallelism = 1;
+
+    /**
+     * Threads parsing the class files of large archives, shared by all archives scanned by one call, or null if
+     * none has needed it yet.
+     */
+    private ExecutorService parsePool;
+
+    /**
+     * Cache of archives scanned by earlier builds, or null if archives always should be scanned.
+     */
+    private IndexCache indexCache;
+
+    /**
+     * Archives already indexed by other visitors in the same build, or null if they are not shared.
+     */
+    private SessionIndex sessionIndex;
+
+    /**
+     * Decides which references are recorded while scanning.
+     */
+    private ScanFilter filter = ScanFilter.NONE;
 
     /**
-     * FQN of all annotations referenced.
+     * How archives are read.
      */
-    private final Set<String> annotationReferenced = new HashSet<>();
+    private IoBackend ioBackend = IoBackend.MAPPED;
 
     /**
-     * Map with all classes referenced, and the classes that referenced them.
+     * How much of each class file is parsed.
      */
-    private final Map<String, Set<String>> classesReferenced = new HashMap<>();
+    private ScanProfile scanProfile = ScanProfile.THOROUGH;
 
     /**
-     * Map with all methods referenced, and the class and method that referenced them.
+     * Whether the state of the class files in scanned directories is kept in the index cache,
+     * so unchanged class files are not parsed again.
      */
-    private final Map<String, Set<String>> methodsReferenced = new HashMap<>();
+    private boolean incremental = true;
 
     /**
-     * Methods mapped by their class.
+     * Whether only the classes reachable from the roots are parsed, instead of every class in every archive.
      */
-    private final Map<String, Set<String>> methodsByClass = new HashMap<>();
+    private boolean reachability;
 
     /**
-     * Map with parent class as key, and all seen subclasses of this class or interface.
+     * Classes, or packages ending with {@code /*}, that are roots in reachability mode.
      */
-    private final Map<String, List<String>> subclassesByParent = new HashMap<>();
+    private List<String> entryPoints = Collections.emptyList();
 
+    /**
+     * Bytes of references held in memory before they are spilled to disk, or 0 to keep them all in memory.
+     */
+    private long referenceMemoryBudget;
+
+    /**
+     * Where references are spilled.
+     */
+    private Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * Where the references found are spilled while references are spilled, and null otherwise.
+     */
+    private ReferenceSpill spill;
+
+    /**
+     * The most bytes of references held in memory at once by the last scan that spilled references.
+     */
+    private long peakBufferedReferenceBytes;
+
+    private final ScanMetrics metrics = new ScanMetrics();
 
     // Reference to primitives
     private final Set<String> ignoredClasses = new HashSet<>(
             asList("I", "V", "Z", "B", "C", "S", "D", "F", "J"));
 
     public ClassFileVisitor() throws IOException, URISyntaxException {
-        List<String> bootClasspath = getBootClasspath()
+        this(null);
+    }
+
+    /**
+     * @param indexCache cache of archives scanned by earlier builds. May be null.
+     */
+    public ClassFileVisitor(IndexCache indexCache) throws IOException, URISyntaxException {
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * @return how long each phase took so far, and what was found in each archive.
+     */
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the platform classes of the running JDK, which are kept for the JVM, seen with the ids of this
+     * visitor's symbols. The view is shared with the other visitors of the session index if there is one.
+     */
+    private synchronized PlatformView getPlatform() throws IOException {
+        if (platform == null) {
+            platform = sessionIndex != null
+                    ? sessionIndex.getPlatform(() -> new PlatformView(PlatformClasses.forRunningJdk(getExistingBootClasspath(), indexCache), symbols))
+                    : new PlatformView(PlatformClasses.forRunningJdk(getExistingBootClasspath(), indexCache), symbols);
+        }
+        return platform;
+    }
+
+    private List<String> getExistingBootClasspath() {
+        return getBootClasspath()
                 .stream() // sunrsasign.jar is most likely listed on boot classpath, but does not exist.
                 .filter(s -> !s.endsWith("sunrsasign.jar"))
+                .filter(s -> Files.exists(Paths.get(s)))
                 .collect(Collectors.toList());
-        Report bootReport = generateReportForJar(bootClasspath);
-        classesVisited.addAll(bootReport.getClassesVisited());
-        methodsVisited.addAll(bootReport.getMethodsVisited());
     }
 
+    /**
+     * @param parallelism the number of archives to scan in parallel. Each archive is scanned
+     *                    into its own {@link ScanResult}, and the results are merged in the order
+     *                    the archives are given. Values less than 1 means one thread per available processor.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
+
+    /**
+     * @param archiveParallelism the number of threads parsing the class files of an archive of at least 1 MB,
+     *                           while the class files are read from it on the thread scanning the archive.
+     *                           This lets a single large archive, like a fat jar, use several processors.
+     *                           Values less than 1 means one thread per available processor.
+     */
+    public void setArchiveParallelism(int archiveParallelism) {
+        this.archiveParallelism = archiveParallelism < 1 ? Runtime.getRuntime().availableProcessors() : archiveParallelism;
+    }
+
+    /**
+     * @param indexCache cache of archives scanned by earlier builds. Archives found in the cache are
+     *                   not scanned again, and newly scanned archives are added to it.
+     */
+    public void setIndexCache(IndexCache indexCache) {
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * @param sessionIndex archives indexed by other visitors in the same build. Archives found in it are neither
+     *                     scanned nor read from the index cache, and archives indexed by this visitor are added to it.
+     *                     The visitor uses the symbol table and platform classes of the session, so it must be set
+     *                     before anything is scanned.
+     */
+    public void setSessionIndex(SessionIndex sessionIndex) {
+        if (!result.classesVisited.isEmpty()) {
+            throw new IllegalStateException("The session index must be set before anything is scanned");
+        }
+        this.sessionIndex = sessionIndex;
+        symbols = sessionIndex.getSymbols();
+        result = new ScanResult(symbols);
+        platform = null;
+    }
+
+    /**
+     * @param ioBackend how archives are read. Archives too large to be memory-mapped are always read
+     *                  as zip file systems.
+     */
+    public void setIoBackend(IoBackend ioBackend) {
+        this.ioBackend = ioBackend;
+    }
+
+    /**
+     * @param scanProfile how much of each class file is parsed. Cached archive indexes are only used if
+     *                    they were made with the same profile.
+     */
+    public void setScanProfile(ScanProfile scanProfile) {
+        this.scanProfile = scanProfile;
+    }
+
+    /**
+     * @param incremental if true, and there is an index cache, only class files that have changed since a
+     *                    directory was last scanned are parsed again.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @param reachability if true, the classes in directories, the classes of wars and Spring Boot jars in
+     *                     WEB-INF/classes or BOOT-INF/classes, and the entry points are roots. Other classes are only
+     *                     parsed once they are referenced by a class already parsed, so nothing is reported for code
+     *                     that can not be reached from the roots. The index cache and session index are not used
+     *                     for archives in this mode, since only parts of them are parsed.
+     */
+    public void setReachability(boolean reachability) {
+        this.reachability = reachability;
+    }
+
+    /**
+     * @param entryPoints classes that are roots in reachability mode, like {@code org/example/Main}, or packages
+     *                    ending with {@code /*}, like {@code org/example/*}, for all classes in the package and its
+     *                    subpackages. Both «/» and «.» may be used as package separator.
+     */
+    public void setEntryPoints(List<String> entryPoints) {
+        this.entryPoints = entryPoints.stream().map(entryPoint -> entryPoint.replace('.', '/')).collect(Collectors.toList());
+    }
+
+    /**
+     * @param referenceMemoryBudget if above 0, the references found are not kept in memory, but buffered up to this
+     *                              many bytes, sorted and written to run files in the spill directory. Each thread
+     *                              scanning buffers a few references of its own, so even a single large archive
+     *                              stays within the budget. The missing links are found by merging the runs, and
+     *                              the report holds no references. What the classes declare is still kept in
+     *                              memory, since methods are resolved through the class hierarchy. Archives are
+     *                              read from the index cache, but not written to it, and the session index is not
+     *                              used, since both keep the references of an archive in memory.
+     *                              Not used in reachability mode.
+     */
+    public void setReferenceMemoryBudget(long referenceMemoryBudget) {
+        this.referenceMemoryBudget = referenceMemoryBudget;
+    }
+
+    /**
+     * @param spillDirectory where references are spilled when there is a reference memory budget. Defaults to
+     *                       the temporary directory. The files are deleted when the missing links have been found.
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @param jarfiles archives, or directories of class files, to scan.
+     */
     public Report generateReportForJar(List<String> jarfiles) throws IOException, URISyntaxException {
         return generateReportForJar(jarfiles, Collections.<String>emptyList(), Collections.<String>emptyList(), false);
     }
 
+    /**
+     * @param jarfiles archives, or directories of class files, to scan.
+     * The ignore configuration is applied while scanning as well as in the report. Classes in
+     * {@code ignoreReferencesInPackages} are only scanned for what they declare, and references to
+     * {@code ignorePackages} are never recorded.
+     */
     public Report generateReportForJar(List<String> jarfiles, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) throws IOException, URISyntaxException {
-        for (String jarfile : jarfiles) {
-            if (jarfile.endsWith(".jar")) {
-                URI uri = URI.create("jar:file:" + jarfile);
-                try (FileSystem zipfs = FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap())) {
-                    for (final Path path : zipfs.getRootDirectories()) {
-                        Files.walkFileTree(path, Collections.<FileVisitOption>emptySet(), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
-                            @Override
-                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                                if (file.getFileName().toString().endsWith(".class")) {
-                                    try (InputStream is = Files.newInputStream(file)) {
-                                        ClassReader cr = new ClassReader(is);
-                                        SignatureVisitor v = new SignatureVisitor();
-                                        cr.accept(v, 0);
-                                    }
-
-                                }
-                                return FileVisitResult.CONTINUE;
-                            }
-                        });
+        try {
+            return generateReport(jarfiles, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+        } finally {
+            shutdownParsePool();
+        }
+    }
+
+    private Report generateReport(List<String> jarfiles, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) throws IOException {
+        filter = new ScanFilter(ignorePackages, ignoreReferencesInPackages);
+        if (referenceMemoryBudget > 0 && !reachability) {
+            return scanWithSpilledReferences(jarfiles, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+        }
+        long start = System.nanoTime();
+        if (reachability) {
+            scanReachable(jarfiles);
+        } else {
+            scanArchives(jarfiles);
+        }
+        metrics.recordPhase("scan", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        result.addAll(platformClassesFor(result));
+        metrics.recordPhase("platform", System.nanoTime() - start);
+        return new Report(result, scanProfile, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+    }
+
+    /**
+     * Scans the archives a few at a time, keeping what they declare and spilling what they reference to disk,
+     * so only the archives being indexed are fully in memory.
+     */
+    private Report scanWithSpilledReferences(List<String> jarfiles, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(spillDirectory);
+        // A thread buffers references for each archive scanned at once, and for each worker parsing a large one.
+        // The threads get at most a quarter of the budget, and the shared references the rest, half for each kind
+        // of reference, as edges of one long each.
+        int threads = parallelism * (archiveParallelism > 1 ? 1 + archiveParallelism : 1);
+        int threadEdges = (int) Math.max(1, Math.min(MAX_THREAD_BUFFERED_EDGES, referenceMemoryBudget / 4 / threads / 2 / Long.BYTES));
+        long sharedBudget = referenceMemoryBudget - (long) threads * 2 * threadEdges * Long.BYTES;
+        int sharedEdges = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, sharedBudget / 2 / Long.BYTES));
+        SpilledReferences classReferences = new SpilledReferences(spillDirectory, "classes", sharedEdges);
+        SpilledReferences methodReferences = new SpilledReferences(spillDirectory, "methods", sharedEdges);
+        spill = new ReferenceSpill(symbols, classReferences, methodReferences, threadEdges);
+        try {
+            for (int from = 0; from < jarfiles.size(); from += parallelism) {
+                List<String> batch = jarfiles.subList(from, Math.min(jarfiles.size(), from + parallelism));
+                for (ScanResult partial : inParallel(batch, this::indexArchive)) {
+                    result.addDeclarations(partial);
+                }
+            }
+            metrics.recordPhase("scan", System.nanoTime() - start);
+            peakBufferedReferenceBytes = spill.getPeakBufferedBytes();
+            log.debug("References spilled to {} and {} runs, with at most {} bytes buffered",
+                    classReferences.getRuns(), methodReferences.getRuns(), peakBufferedReferenceBytes);
+
+            start = System.nanoTime();
+            result.addAll(platformClassesFor(spill.getMethodOwners(), result.supertypesByClass));
+            metrics.recordPhase("platform", System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            classReferences.close();
+            methodReferences.close();
+            throw e;
+        } finally {
+            spill = null;
+        }
+        return new Report(result, classReferences, methodReferences, scanProfile, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+    }
+
+    /**
+     * Indexes each of {@code jarfiles} on its own, with the same ignore configuration as
+     * {@link #generateReportForJar(List, List, List, boolean)}, without adding them to the result of this visitor.
+     *
+     * @return what was found in each of {@code jarfiles}, in the same order.
+     */
+    List<ScanResult> indexEach(List<String> jarfiles, List<String> ignorePackages, List<String> ignoreReferencesInPackages) throws IOException {
+        filter = new ScanFilter(ignorePackages, ignoreReferencesInPackages);
+        try {
+            return inParallel(jarfiles, this::indexArchive);
+        } finally {
+            shutdownParsePool();
+        }
+    }
+
+    /**
+     * @return the names of all platform classes, and the platform classes {@code scanned} needs: the owners of the
+     * methods it references and the supertypes of its classes, with their supertypes.
+     */
+    ScanResult platformClassesFor(ScanResult scanned) throws IOException {
+        IntSet methodOwners = new IntSet();
+        for (int method : scanned.methodsReferenced.keys()) {
+            methodOwners.add(symbols.classOf(method));
+        }
+        return platformClassesFor(methodOwners, scanned.supertypesByClass);
+    }
+
+    private ScanResult platformClassesFor(IntSet methodOwners, IntObjectMap<IntSet> supertypesByClass) throws IOException {
+        PlatformView platform = getPlatform();
+        ScanResult needed = new ScanResult(symbols);
+        needed.addAll(platform.getNames());
+        if (scanProfile != ScanProfile.CLASSES) {
+            // Platform classes only need to be parsed for their methods and supertypes, which the
+            // classes profile does not check.
+            needed.addAll(platform.resolve(methodOwners, supertypesByClass, (cr, length, partial) -> scanClass(cr, length, partial, false)));
+            log.debug("{} platform classes parsed in this JVM", platform.getParsedCount());
+        }
+        return needed;
+    }
+
+    ScanProfile getScanProfile() {
+        return scanProfile;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    long getPeakBufferedReferenceBytes() {
+        return peakBufferedReferenceBytes;
+    }
+
+    /**
+     * @return a result to scan into, which spills its references if references are spilled.
+     */
+    private ScanResult newResult() {
+        return new ScanResult(symbols, spill);
+    }
+
+    private void scanArchives(List<String> jarfiles) throws IOException {
+        // Merged in the order the archives were given, so the result does not depend on scheduling.
+        for (ScanResult partial : inParallel(jarfiles, this::indexArchive)) {
+            result.addAll(partial);
+        }
+    }
+
+    /**
+     * Scans the directories, and the classes in the archives that can be reached from them and from the other roots.
+     * A class is reached when a class already parsed references it, one of its methods or one of its members,
+     * or inherits from it. The results are merged in the order the archives were given.
+     */
+    private void scanReachable(List<String> jarfiles) throws IOException {
+        ScanResult[] results = new ScanResult[jarfiles.size()];
+        long[] nanos = new long[jarfiles.size()];
+        IntSet reached = new IntSet();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        int parsed = 0;
+        try (ClassLocator locator = new ClassLocator(symbols, ioBackend)) {
+            for (int i = 0; i < jarfiles.size(); i++) {
+                String jarfile = jarfiles.get(i);
+                if (Files.isDirectory(Paths.get(jarfile))) {
+                    results[i] = indexArchive(jarfile);
+                    results[i].classesVisited.forEach(reached::add);
+                    addReferencedClasses(results[i], worklist);
+                } else if (isArchive(jarfile)) {
+                    long start = System.nanoTime();
+                    results[i] = new ScanResult(symbols);
+                    try {
+                        locator.addArchive(Paths.get(jarfile), i);
+                    } catch (IOException e) {
+                        log.warn("Could not read " + jarfile, e);
                     }
+                    nanos[i] = System.nanoTime() - start;
+                }
+            }
+            locator.getRoots().forEach(worklist::add);
+            for (String entryPoint : entryPoints) {
+                if (entryPoint.endsWith("/*")) {
+                    locator.findByPrefix(entryPoint.substring(0, entryPoint.length() - 1)).forEach(worklist::add);
+                } else {
+                    worklist.add(symbols.intern(entryPoint));
+                }
+            }
 
-                } catch (Exception e){
-                    // woops
-                    log.warn("Woops", e);
+            while (!worklist.isEmpty()) {
+                int className = worklist.pop();
+                ClassLocator.Location location = reached.add(className) ? locator.find(className) : null;
+                if (location == null) {
+                    // Already parsed, a platform class, or missing.
+                    continue;
                 }
+                long start = System.nanoTime();
+                ScanResult classResult = new ScanResult(symbols);
+                location.read((name, buffer, offset, length) ->
+                        scanClass(new ClassReader(buffer, offset, length), length, classResult, true));
+                addReferencedClasses(classResult, worklist);
+                results[location.getArchive()].addAll(classResult);
+                nanos[location.getArchive()] += System.nanoTime() - start;
+                parsed++;
+            }
+            log.info("Parsed {} of {} classes in archives, reachable from the roots", parsed, locator.size());
+        }
+
+        for (int i = 0; i < jarfiles.size(); i++) {
+            if (results[i] == null) {
+                continue;
+            }
+            if (isArchive(jarfiles.get(i))) {
+                metrics.recordArtifact(jarfiles.get(i), ArtifactMetrics.REACHABLE, nanos[i], results[i]);
+            }
+            result.addAll(results[i]);
+        }
+    }
+
+    /**
+     * Adds the classes referenced in {@code partial}, the owners of the methods referenced, and the supertypes
+     * to {@code worklist}.
+     */
+    private void addReferencedClasses(ScanResult partial, Deque<Integer> worklist) {
+        for (int className : partial.classesReferenced.keys()) {
+            worklist.add(className);
+        }
+        for (int method : partial.methodsReferenced.keys()) {
+            worklist.add(symbols.classOf(method));
+        }
+        partial.supertypesByClass.forEach((supertypes, className) -> supertypes.forEach(worklist::add));
+    }
+
+    private static boolean isArchive(String jarfile) {
+        return jarfile.endsWith(".jar") || jarfile.endsWith(".war") || jarfile.endsWith(".ear");
+    }
+
+    /**
+     * @return the result of {@code task} for each of {@code items}, in the same order. Up to {@code parallelism}
+     * items are processed at the same time.
+     */
+    private <T, R> List<R> inParallel(List<T> items, ScanTask<T, R> task) throws IOException {
+        List<R> results = new ArrayList<>(items.size());
+        if (parallelism == 1 || items.size() < 2) {
+            for (T item : items) {
+                results.add(task.apply(item));
             }
+            return results;
         }
-        handleInheritance("java/lang/Object");
-        return new Report(classesVisited, classesReferenced, methodsVisited, methodsReferenced, annotationReferenced, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
-    }
-
-    private void handleInheritance(String parent) {
-        Set<String> superMethods = methodsByClass.get(parent);
-        List<String> subclasses = subclassesByParent.get(parent);
-        if (nonNull(subclasses)) {
-            for (String subclass : subclasses) {
-                if (nonNull(superMethods)) {
-                    methodsVisited.addAll(superMethods
-                            .stream()
-                            .map(superMethod -> subclass + "." + superMethod)
-                            .collect(Collectors.toList()));
-                    Set<String> subclassMethods = methodsByClass.computeIfAbsent(subclass, s -> new HashSet<>());
-                    if (subclassMethods != null) {
-                        subclassMethods.addAll(superMethods);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()));
+        try {
+            List<Future<R>> futures = items.stream()
+                    .map(item -> executor.submit(() -> task.apply(item)))
+                    .collect(Collectors.toList());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to scan", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ScanTask<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    /**
+     * @return what was found in {@code jarfile}, taken from the session index or read from the index cache if the
+     * archive has been indexed before. Only new results are written to, so archives may be indexed concurrently.
+     */
+    ScanResult indexArchive(String jarfile) {
+        long start = System.nanoTime();
+        ScanResult partial = newResult();
+        String source = ArtifactMetrics.SCANNED;
+        if (Files.isDirectory(Paths.get(jarfile))) {
+            source = ArtifactMetrics.DIRECTORY;
+            try {
+                partial = indexDirectory(Paths.get(jarfile));
+            } catch (Exception e) {
+                log.warn("Could not scan directory " + jarfile, e);
+            }
+        } else if (isArchive(jarfile)) {
+            Path archive = Paths.get(jarfile);
+            AtomicReference<String> archiveSource = new AtomicReference<>(ArtifactMetrics.SESSION);
+            partial = nonNull(sessionIndex) && spill == null
+                    ? sessionIndex.get(archive, scanOptions(), () -> loadOrScanArchive(archive, archiveSource))
+                    : loadOrScanArchive(archive, archiveSource);
+            source = archiveSource.get();
+        }
+        partial.closeReferences();
+        metrics.recordArtifact(jarfile, source, System.nanoTime() - start, partial);
+        return partial;
+    }
+
+    /**
+     * @return what was found in {@code archive}, read from the index cache if it has been scanned before.
+     * {@code source} is set to where it was found.
+     */
+    private ScanResult loadOrScanArchive(Path archive, AtomicReference<String> source) {
+        Optional<ScanResult> cached = nonNull(indexCache) ? indexCache.load(archive, scanOptions(), this::newResult) : Optional.empty();
+        if (cached.isPresent()) {
+            source.set(ArtifactMetrics.CACHE);
+            return cached.get();
+        }
+        source.set(ArtifactMetrics.SCANNED);
+        ScanResult partial = newResult();
+        try {
+            scanArchive(archive.toString(), partial, true);
+            // A result that spilled its references is not complete.
+            if (nonNull(indexCache) && !partial.spillsReferences()) {
+                indexCache.store(archive, scanOptions(), partial);
+            }
+        } catch (Exception e){
+            // woops
+            log.warn("Woops", e);
+        }
+        return partial;
+    }
+
+    /**
+     * @return identifies everything that decides what is recorded when an archive is scanned.
+     */
+    private String scanOptions() {
+        return "profile=" + scanProfile + ";" + filter.fingerprint();
+    }
+
+    /**
+     * @return what was found in the class files in {@code directory}, which are scanned in parallel.
+     * In incremental mode, only class files that have changed since the directory was last scanned are parsed.
+     * A class file has not changed if it has the same size and modification time, or the same content hash.
+     */
+    private ScanResult indexDirectory(Path directory) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(directory)) {
+            classFiles = files
+                    .filter(file -> file.getFileName().toString().endsWith(".class"))
+                    .filter(file -> !file.getFileName().toString().equals("module-info.class"))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        boolean useState = incremental && nonNull(indexCache);
+        Map<String, ClassFileState> previous = useState
+                ? indexCache.loadDirectory(directory, scanOptions(), symbols)
+                : Collections.<String, ClassFileState>emptyMap();
+
+        AtomicInteger parsed = new AtomicInteger();
+        List<ClassFileState> classFileStates = inParallel(classFiles, file -> {
+            String path = directory.relativize(file).toString();
+            long size = Files.size(file);
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            ClassFileState state = previous.get(path);
+            if (state != null && state.getSize() == size && state.getLastModified() == lastModified) {
+                return state;
+            }
+            byte[] content = Files.readAllBytes(file);
+            MessageDigest digest = IndexCache.sha1();
+            String contentHash = IndexCache.hex(digest.digest(content));
+            if (state != null && state.getContentHash().equals(contentHash)) {
+                // Rewritten, but not changed.
+                return new ClassFileState(path, size, lastModified, contentHash, state.getResult());
+            }
+            ScanResult partial = new ScanResult(symbols);
+            scanClass(new ClassReader(content), content.length, partial, true);
+            parsed.incrementAndGet();
+            return new ClassFileState(path, size, lastModified, contentHash, partial);
+        });
+        log.info("Parsed {} of {} class files in {}", parsed.get(), classFileStates.size(), directory);
+
+        boolean unchanged = classFileStates.size() == previous.size()
+                && classFileStates.stream().allMatch(state -> state == previous.get(state.getPath()));
+        if (useState && !unchanged) {
+            indexCache.storeDirectory(directory, scanOptions(), classFileStates);
+        }
+
+        ScanResult partial = newResult();
+        for (ClassFileState state : classFileStates) {
+            partial.addAll(state.getResult());
+        }
+        return partial;
+    }
+
+    private void scanArchive(String jarfile, ScanResult partial, boolean recordReferences) throws IOException {
+        Path archive = Paths.get(jarfile);
+        if (archiveParallelism > 1 && Files.size(archive) >= PIPELINED_ARCHIVE_SIZE) {
+            try (ParsePipeline pipeline = new ParsePipeline(parsePool(), archiveParallelism, this::newResult, (cr, length, result) -> scanClass(cr, length, result, recordReferences))) {
+                readArchive(archive, partial, recordReferences, pipeline::submit);
+                partial.addAll(pipeline.finish());
+            }
+        } else {
+            readArchive(archive, partial, recordReferences,
+                    (buffer, offset, length) -> scanClass(new ClassReader(buffer, offset, length), length, partial, recordReferences));
+        }
+    }
+
+    /**
+     * @return the pool of the parse pipelines, with a thread for each worker of the {@code parallelism} archives
+     * that may be scanned at once.
+     */
+    private synchronized ExecutorService parsePool() {
+        if (parsePool == null) {
+            parsePool = Executors.newFixedThreadPool(parallelism * archiveParallelism);
+        }
+        return parsePool;
+    }
+
+    private synchronized void shutdownParsePool() {
+        if (parsePool != null) {
+            parsePool.shutdownNow();
+            parsePool = null;
+        }
+    }
+
+    /**
+     * Reads the class files in {@code archive} that need to be parsed, and gives them to {@code parser}.
+     */
+    private void readArchive(Path archive, ScanResult partial, boolean recordReferences, ClassSink parser) throws IOException {
+        String jarfile = archive.toString();
+        if (ioBackend == IoBackend.MAPPED && Files.size(archive) <= ZipArchiveReader.MAX_MAPPED_SIZE) {
+            try (ZipArchiveReader reader = ZipArchiveReader.map(archive)) {
+                scanZipArchive(reader, jarfile, partial, recordReferences, parser);
+            }
+            return;
+        }
+        URI uri = URI.create("jar:file:" + jarfile);
+        try (FileSystem zipfs = FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap())) {
+            for (final Path path : zipfs.getRootDirectories()) {
+                scanClassFiles(path, jarfile, partial, recordReferences, parser);
+            }
+        }
+    }
+
+    /**
+     * Parses class files, either directly or by handing them to the workers of a {@link ParsePipeline}.
+     */
+    private interface ClassSink {
+        void parse(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Scans the classes in {@code archive}, and the libraries packaged inside it.
+     */
+    private void scanZipArchive(ZipArchiveReader archive, String archiveName, ScanResult partial, boolean recordReferences, ClassSink parser) throws IOException {
+        if (scanProfile == ScanProfile.CLASSES) {
+            for (ZipArchiveReader.Entry entry : archive.listEntries(".class")) {
+                String className = ClassLocator.className(entry.name);
+                if (className == null) {
+                    continue;
+                }
+                if (recordReferences && filter.recordsReferencesFrom(className)) {
+                    archive.read(entry, (name, buffer, offset, length) -> parser.parse(buffer, offset, length));
+                } else {
+                    // Nothing but its name is needed, so it is not even read.
+                    partial.classesVisited.add(symbols.intern(className));
+                }
+            }
+        } else {
+            archive.forEachEntry(".class", (name, buffer, offset, length) -> {
+                if (!name.equals("module-info.class") && !name.endsWith("/module-info.class")) {
+                    parser.parse(buffer, offset, length);
+                }
+            });
+        }
+        ZipArchiveReader.NestedArchiveHandler scanLibrary = (name, nested) -> {
+            try (ZipArchiveReader library = nested) {
+                if (isPackagedLibrary(archiveName, name)) {
+                    scanZipArchive(library, name, partial, recordReferences, parser);
+                }
+            }
+        };
+        archive.forEachNestedArchive(".jar", scanLibrary);
+        archive.forEachNestedArchive(".war", scanLibrary);
+    }
+
+    /**
+     * @param archiveName name of the archive {@code root} belongs to, or null if it is not the root of an archive.
+     */
+    private void scanClassFiles(Path root, String archiveName, ScanResult partial, boolean recordReferences, ClassSink parser) throws IOException {
+        Files.walkFileTree(root, Collections.<FileVisitOption>emptySet(), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(".class") && !fileName.equals("module-info.class")) {
+                    byte[] content = Files.readAllBytes(file);
+                    parser.parse(content, 0, content.length);
+
+                } else if (archiveName != null && isPackagedLibrary(archiveName, root.relativize(file).toString())) {
+                    // A zip file system can not be opened inside another one, so the library is read into memory.
+                    String name = root.relativize(file).toString();
+                    try (ZipArchiveReader nested = new ZipArchiveReader(ByteBuffer.wrap(Files.readAllBytes(file)), archiveName + "!/" + name)) {
+                        scanZipArchive(nested, name, partial, recordReferences, parser);
                     }
                 }
-                handleInheritance(subclass);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return true if {@code entryName} is a library that is on the classpath of the deployable archive
+     * {@code archiveName}: the jars in WEB-INF/lib of a war or BOOT-INF/lib of a Spring Boot jar,
+     * and the jars and wars in an ear.
+     */
+    static boolean isPackagedLibrary(String archiveName, String entryName) {
+        if (!entryName.endsWith(".jar") && !entryName.endsWith(".war")) {
+            return false;
+        }
+        if (archiveName.endsWith(".ear")) {
+            return true;
+        }
+        return entryName.endsWith(".jar")
+                && (entryName.startsWith("WEB-INF/lib/")
+                || entryName.startsWith("WEB-INF/lib-provided/")
+                || entryName.startsWith("BOOT-INF/lib/"));
+    }
+
+    private void scanClass(ClassReader cr, int length, ScanResult partial, boolean recordReferences) {
+        // Method bodies are only parsed if the references made in them are recorded.
+        boolean classReferences = recordReferences && filter.recordsReferencesFrom(cr.getClassName());
+        if (scanProfile == ScanProfile.CLASSES) {
+            if (classReferences) {
+                partial.classParsed(length);
+                cr.accept(new SignatureVisitor(partial, true), scanProfile.getParsingOptions());
+                addConstantPoolReferences(cr, partial);
+            } else {
+                partial.classesVisited.add(partial.symbols.intern(cr.getClassName()));
+            }
+            return;
+        }
+        partial.classParsed(length);
+        int parsingOptions = classReferences ? scanProfile.getParsingOptions() : ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+        cr.accept(new SignatureVisitor(partial, classReferences), parsingOptions);
+    }
+
+    /**
+     * Records the classes named in the constant pool of {@code cr}: the classes that are instantiated, cast to
+     * or whose members are used, and the types in the descriptors of the members used. These are the classes
+     * referenced by the code, found without parsing it. They are recorded as referenced from the class itself.
+     */
+    private void addConstantPoolReferences(ClassReader cr, ScanResult partial) {
+        String className = cr.getClassName();
+        int referencedFrom = symbols.intern(className);
+        char[] buffer = new char[cr.getMaxStringLength()];
+        for (int i = 1; i < cr.getItemCount(); i++) {
+            int item = cr.getItem(i);
+            if (item == 0) {
+                // The slot after a long or double constant.
+                continue;
+            }
+            switch (cr.readByte(item - 1)) {
+                case CONSTANT_CLASS:
+                    String name = cr.readUTF8(item, buffer);
+                    addReferencedType(name.startsWith("[") ? Type.getType(name) : Type.getObjectType(name), className, referencedFrom, partial);
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addReferencedTypes(cr.readUTF8(item + 2, buffer), className, referencedFrom, partial);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addReferencedTypes(cr.readUTF8(item, buffer), className, referencedFrom, partial);
+                    break;
+                default:
+                    break;
             }
         }
     }
 
+    private void addReferencedTypes(String descriptor, String className, int referencedFrom, ScanResult partial) {
+        if (descriptor.startsWith("(")) {
+            for (Type argument : Type.getArgumentTypes(descriptor)) {
+                addReferencedType(argument, className, referencedFrom, partial);
+            }
+            addReferencedType(Type.getReturnType(descriptor), className, referencedFrom, partial);
+        } else {
+            addReferencedType(Type.getType(descriptor), className, referencedFrom, partial);
+        }
+    }
+
+    private void addReferencedType(Type type, String className, int referencedFrom, ScanResult partial) {
+        if (type.getSort() == Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() != Type.OBJECT) {
+            return;
+        }
+        String name = type.getInternalName();
+        if (!name.equals(className) && notIgnoredClass(name) && filter.recordsReferencesTo(name)) {
+            partial.addReferencedClass(symbols.intern(name), referencedFrom);
+        }
+    }
+
     private class SignatureVisitor extends ClassVisitor {
-        private String className;
+        private final ScanResult result;
+        private final SymbolTable symbols;
+        private final boolean recordReferences;
+        private int className;
 
-        public SignatureVisitor() {
-            super(Opcodes.ASM5);
+        /**
+         * @param recordReferences whether classes and methods referenced should be recorded,
+         *                         or only the classes and methods declared.
+         */
+        public SignatureVisitor(ScanResult result, boolean recordReferences) {
+            super(Opcodes.ASM9);
+            this.result = result;
+            this.symbols = result.symbols;
+            this.recordReferences = recordReferences;
         }
 
         public void visit(int version, int access, String name, String signature, String superName,
                           String[] interfaces) {
-            className = name;
-            classesVisited.add(name);
+            className = symbols.intern(name);
+            result.classesVisited.add(className);
             if (superName != null) {
                 addReferencedClassIfNotIgnored(superName, className);
+                result.registerInheritance(className, symbols.intern(superName));
             }
-            registerInheritance(className, superName);
             if(interfaces.length > 0){
-                addReferencedClassesIfNotIgnored(name, interfaces);
+                addReferencedClassesIfNotIgnored(className, interfaces);
                 for (String implementedInterface : interfaces) {
-                    registerInheritance(className, implementedInterface);
+                    result.registerInheritance(className, symbols.intern(implementedInterface));
                 }
             }
         }
 
-        private void registerInheritance(String className, String superName) {
-            Collection<String> mapping = subclassesByParent.computeIfAbsent(superName, s -> new LinkedList<>());
-            mapping.add(className);
-            if("java/lang/annotation/Annotation".equals(superName)){
-                annotationReferenced.add(className);
-            }
-        }
-
         public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-            String method = name + desc;
-            String classAndMethod = className + "." + method;
-            methodsVisited.add(classAndMethod);
-            addClassMethodMapping(className, method);
+            int method = symbols.member(name, desc);
+            int classAndMethod = symbols.method(className, method);
+            result.methodsVisited.add(classAndMethod);
+            result.addClassMethodMapping(className, method);
             if (exceptions != null && exceptions.length > 0) {
                 addReferencedClassesIfNotIgnored(classAndMethod, exceptions);
             }
-            return new MethodVisitor(Opcodes.ASM5) {
+            return new MethodVisitor(Opcodes.ASM9) {
 
                 @Override
                 public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                    String annotationClassName = addReferencedClassIfNotIgnored(desc, classAndMethod);
-                    annotationReferenced.add(annotationClassName);
+                    addReferencedAnnotation(desc, classAndMethod);
                     return super.visitAnnotation(desc, visible);
                 }
 
                 @Override
                 public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-                    String annotationClassName = addReferencedClassIfNotIgnored(desc, classAndMethod);
-                    annotationReferenced.add(annotationClassName);
+                    addReferencedAnnotation(desc, classAndMethod);
                     return super.visitTypeAnnotation(typeRef, typePath, desc, visible);
                 }
 
                 @Override
                 public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
-                    String annotationClassName = addReferencedClassIfNotIgnored(desc, classAndMethod);
-                    annotationReferenced.add(annotationClassName);
+                    addReferencedAnnotation(desc, classAndMethod);
                     return super.visitParameterAnnotation(parameter, desc, visible);
                 }
 
@@ -225,10 +986,9 @@ public class ClassFileVisitor {
                 @Override
                 public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
                     String normalizeClassName = normalizeClassName(owner);
-                    if (notIgnoredClass(normalizeClassName)) {
-                        String referencedMethod = normalizeClassName + "." + name + desc;
-                        Set<String> occurances = methodsReferenced.computeIfAbsent(referencedMethod, s -> new HashSet<>());
-                        occurances.add(classAndMethod);
+                    if (recordReferences && notIgnoredClass(normalizeClassName) && filter.recordsReferencesTo(normalizeClassName)) {
+                        int referencedMethod = symbols.method(normalizeClassName, name, desc);
+                        result.addReferencedMethod(referencedMethod, classAndMethod);
                     }
                     super.visitMethodInsn(opcode, owner, name, desc, itf);
                 }
@@ -252,11 +1012,10 @@ public class ClassFileVisitor {
 
         public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
             addReferencedClassIfNotIgnored(desc, className);
-            return new FieldVisitor(Opcodes.ASM5) {
+            return new FieldVisitor(Opcodes.ASM9) {
                 @Override
                 public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                    String annotationClass = addReferencedClassIfNotIgnored(desc, className);
-                    annotationReferenced.add(annotationClass);
+                    addReferencedAnnotation(desc, className);
                     return super.visitAnnotation(desc, visible);
                 }
             };
@@ -266,28 +1025,24 @@ public class ClassFileVisitor {
          *
          * @param classnameReference The referenced class.
          * @param referencedFrom where the class was referenced.
-         * @return normalized {@code classnameReference}
          */
-        private String addReferencedClassIfNotIgnored(String classnameReference, String referencedFrom) {
+        private void addReferencedClassIfNotIgnored(String classnameReference, int referencedFrom) {
             String classname = normalizeClassName(classnameReference);
-            if(notIgnoredClass(classname)){
-                Set<String> occurances = classesReferenced.computeIfAbsent(classname, s -> new HashSet<>());
-                occurances.add(referencedFrom);
+            if(recordReferences && notIgnoredClass(classname) && filter.recordsReferencesTo(classname)){
+                result.addReferencedClass(symbols.intern(classname), referencedFrom);
             }
-
-            return classname;
         }
 
-        private void addReferencedClassesIfNotIgnored(String referencedFrom, String... classname) {
+        private void addReferencedClassesIfNotIgnored(int referencedFrom, String... classname) {
             for (String s : classname) {
                 addReferencedClassIfNotIgnored(s, referencedFrom);
             }
         }
-    }
 
-    private void addClassMethodMapping(String className, String method) {
-        Set<String> methodsForClass = methodsByClass.computeIfAbsent(className, s -> new HashSet<>());
-        methodsForClass.add(method);
+        private void addReferencedAnnotation(String desc, int referencedFrom) {
+            addReferencedClassIfNotIgnored(desc, referencedFrom);
+            result.annotationReferenced.add(symbols.intern(normalizeClassName(desc)));
+        }
     }
 
     private boolean notIgnoredClass(String classname) {
@@ -308,14 +1063,17 @@ public class ClassFileVisitor {
     }
 
     // From animal-sniffer/java-boot-classpath-detector/src/main/java/org/codehaus/mojo/animal_sniffer/jbcpd/ShowClassPath.java
+    /**
+     * @return the boot classpath of the running JVM, or an empty list on Java 9 and later where there is none.
+     */
     public List<String> getBootClasspath(){
         String cp = System.getProperty("sun.boot.class.path");
         if (cp != null) {
-            return Arrays.asList(cp.split(":"));
+            return Arrays.asList(cp.split(File.pathSeparator));
         }
         cp = System.getProperty("java.boot.class.path");
         if (cp != null) {
-            return Arrays.asList(cp.split(":"));
+            return Arrays.asList(cp.split(File.pathSeparator));
         }
         Enumeration i = System.getProperties().propertyNames();
         String name = null;
@@ -325,11 +1083,13 @@ public class ClassFileVisitor {
                 if (name == null) {
                     name = temp;
                 } else {
-                    System.err.println("Cannot auto-detect boot class path " + System.getProperty("java.version"));
-                    System.exit(1);
+                    throw new IllegalStateException("Cannot auto-detect boot class path " + System.getProperty("java.version"));
                 }
             }
         }
-        return Arrays.asList(name.split(":"));
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(System.getProperty(name).split(File.pathSeparator));
     }
 }
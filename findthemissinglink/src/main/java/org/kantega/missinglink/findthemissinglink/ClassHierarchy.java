@@ -0,0 +1,123 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Resolves referenced methods against the class hierarchy when they are checked.
+ * A method is resolvable if its class, or any of its superclasses or interfaces, declares it.
+ * The hierarchy is walked breadth first without recursion, and the result is memoized for every
+ * class and member looked at, so each (class, member) pair is only resolved once. Pairs are memoized without
+ * interning them, since most supertypes looked at do not declare the member.
+ * Thread safe: the memo is shared by all threads, and a pair resolved by two threads at once gets the same result.
+ */
+final class ClassHierarchy {
+    private final SymbolTable symbols;
+
+    /**
+     * Direct superclass and interfaces of each class.
+     */
+    private final IntObjectMap<IntSet> supertypesByClass;
+
+    /**
+     * Members declared by each class.
+     */
+    private final IntObjectMap<IntSet> methodsByClass;
+
+    private static final int RESOLVABLE = 1;
+    private static final int UNRESOLVABLE = 2;
+
+    private static final int STRIPE_BITS = 6;
+
+    /**
+     * Whether the member is resolvable from each class looked at, keyed on the class and member. The memo is split
+     * in stripes by the hash of the key, each guarded by itself, so the threads checking methods rarely wait
+     * for each other.
+     */
+    private final LongIntMap[] resolved = new LongIntMap[1 << STRIPE_BITS];
+
+    ClassHierarchy(SymbolTable symbols, IntObjectMap<IntSet> supertypesByClass, IntObjectMap<IntSet> methodsByClass) {
+        this.symbols = symbols;
+        this.supertypesByClass = supertypesByClass;
+        this.methodsByClass = methodsByClass;
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = new LongIntMap();
+        }
+    }
+
+    /**
+     * @param method a method symbol, the pair of owner class and member.
+     * @return true if the owner of {@code method}, or one of its supertypes, declares the member.
+     */
+    boolean isResolvable(int method) {
+        int owner = symbols.first(method);
+        int member = symbols.second(method);
+        int known = memoized(owner, member);
+        if (known != 0) {
+            return known == RESOLVABLE;
+        }
+
+        IntSet seen = new IntSet();
+        Deque<Integer> pending = new ArrayDeque<>();
+        seen.add(owner);
+        pending.add(owner);
+        while (!pending.isEmpty()) {
+            int type = pending.poll();
+            if (declares(type, member)) {
+                memoize(owner, member, RESOLVABLE);
+                return true;
+            }
+            if (type != owner) {
+                int inherited = memoized(type, member);
+                if (inherited == RESOLVABLE) {
+                    memoize(owner, member, RESOLVABLE);
+                    return true;
+                }
+                if (inherited == UNRESOLVABLE) {
+                    // All supertypes of this type are known not to declare the member.
+                    continue;
+                }
+            }
+            IntSet supertypes = supertypesByClass.get(type);
+            if (supertypes != null) {
+                supertypes.forEach(supertype -> {
+                    if (seen.add(supertype)) {
+                        pending.add(supertype);
+                    }
+                });
+            }
+        }
+        // Neither the owner nor any of the types above it declares the member.
+        seen.forEach(type -> memoize(type, member, UNRESOLVABLE));
+        return false;
+    }
+
+    private int memoized(int type, int member) {
+        long key = key(type, member);
+        LongIntMap stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    private void memoize(int type, int member, int resolvable) {
+        long key = key(type, member);
+        LongIntMap stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.put(key, resolvable);
+        }
+    }
+
+    private LongIntMap stripeOf(long key) {
+        return resolved[(int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - STRIPE_BITS))];
+    }
+
+    private static long key(int type, int member) {
+        return (long) type << 32 | member & 0xFFFFFFFFL;
+    }
+
+    private boolean declares(int type, int member) {
+        IntSet members = methodsByClass.get(type);
+        return members != null && members.contains(member);
+    }
+}
@@ -0,0 +1,230 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the class files in archives by class name, without parsing them. Only the central directory of each
+ * archive is read when it is added, and a class file is read when it is asked for.
+ * <p>
+ * A class found in several archives is taken from the first archive added, like a class loader would.
+ * The classes of a war or Spring Boot jar, in WEB-INF/classes or BOOT-INF/classes, are roots: they are the
+ * application itself, while the rest of the archives are libraries. An instance must only be used by one thread.
+ */
+final class ClassLocator implements Closeable {
+    private static final String[] CLASS_DIRECTORIES = {"WEB-INF/classes/", "BOOT-INF/classes/"};
+
+    private final SymbolTable symbols;
+    private final IntObjectMap<Location> locations = new IntObjectMap<>();
+    private final IntSet roots = new IntSet();
+    private final List<FileSystem> fileSystems = new ArrayList<>();
+    private final List<ZipArchiveReader> readers = new ArrayList<>();
+    private final IoBackend ioBackend;
+
+    ClassLocator(SymbolTable symbols, IoBackend ioBackend) {
+        this.symbols = symbols;
+        this.ioBackend = ioBackend;
+    }
+
+    /**
+     * Lists the class files in {@code archive}, and in the libraries packaged inside it.
+     *
+     * @param index identifies the archive in the locations of its class files.
+     */
+    void addArchive(Path archive, int index) throws IOException {
+        String archiveName = archive.toString();
+        if (ioBackend == IoBackend.MAPPED && Files.size(archive) <= ZipArchiveReader.MAX_MAPPED_SIZE) {
+            addZipArchive(ZipArchiveReader.map(archive), archiveName, index);
+            return;
+        }
+        // Kept open until this locator is closed, since class files are read from it later.
+        FileSystem zipfs = FileSystems.newFileSystem(URI.create("jar:file:" + archiveName), Collections.<String, Object>emptyMap());
+        fileSystems.add(zipfs);
+        for (Path root : zipfs.getRootDirectories()) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = root.relativize(file).toString();
+                if (name.endsWith(".class")) {
+                    addClass(name, new Location(index, null, null, file));
+                } else if (ClassFileVisitor.isPackagedLibrary(archiveName, name)) {
+                    ZipArchiveReader nested = new ZipArchiveReader(ByteBuffer.wrap(Files.readAllBytes(file)), archiveName + "!/" + name);
+                    addZipArchive(nested, name, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the class files of the modules of a run-time image, like {@code /modules} of the {@code jrt:/} file
+     * system, where the first name of each path is the module.
+     *
+     * @param classFiles the class files, as listed by {@link #listModules(Path)}.
+     */
+    void addModules(Path modules, List<String> classFiles, int index) {
+        for (String classFile : classFiles) {
+            int module = classFile.indexOf('/');
+            if (module > 0) {
+                addClass(classFile.substring(module + 1), new Location(index, null, null, modules.resolve(classFile)));
+            }
+        }
+    }
+
+    /**
+     * @return the class files in the modules of a run-time image, relative to {@code modules}.
+     */
+    static List<String> listModules(Path modules) throws IOException {
+        try (Stream<Path> walk = Files.walk(modules)) {
+            return walk.filter(file -> file.toString().endsWith(".class"))
+                    .map(file -> modules.relativize(file).toString())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void addZipArchive(ZipArchiveReader archive, String archiveName, int index) throws IOException {
+        // Kept until this locator is closed, since class files are read from it later.
+        readers.add(archive);
+        for (ZipArchiveReader.Entry entry : archive.listEntries(".class")) {
+            addClass(entry.name, new Location(index, archive, entry, null));
+        }
+        ZipArchiveReader.NestedArchiveHandler addLibrary = (name, nested) -> {
+            if (ClassFileVisitor.isPackagedLibrary(archiveName, name)) {
+                addZipArchive(nested, name, index);
+            } else {
+                nested.close();
+            }
+        };
+        archive.forEachNestedArchive(".jar", addLibrary);
+        archive.forEachNestedArchive(".war", addLibrary);
+    }
+
+    private void addClass(String entryName, Location location) {
+        String name = className(entryName);
+        if (name == null) {
+            return;
+        }
+        int className = symbols.intern(name);
+        if (!locations.containsKey(className)) {
+            locations.put(className, location);
+            if (name.length() + ".class".length() < entryName.length()) {
+                // In WEB-INF/classes or BOOT-INF/classes.
+                roots.add(className);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the class in the class file {@code entryName} of an archive, or null if it is not on the
+     * classpath of the archive, like module-info.class and the classes for other Java versions in a multi-release jar.
+     */
+    static String className(String entryName) {
+        if (entryName.startsWith("META-INF/versions/") || entryName.endsWith("module-info.class")) {
+            return null;
+        }
+        String name = entryName;
+        for (String classDirectory : CLASS_DIRECTORIES) {
+            if (name.startsWith(classDirectory)) {
+                name = name.substring(classDirectory.length());
+            }
+        }
+        return name.substring(0, name.length() - ".class".length());
+    }
+
+    /**
+     * @return where {@code className} is found, or null if it is in none of the archives.
+     */
+    Location find(int className) {
+        return locations.get(className);
+    }
+
+    /**
+     * @return the classes in the archives whose names start with {@code prefix}.
+     */
+    IntSet findByPrefix(String prefix) {
+        IntSet found = new IntSet();
+        for (int className : locations.keys()) {
+            if (symbols.name(className).startsWith(prefix)) {
+                found.add(className);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return all classes found in the archives.
+     */
+    int[] getClasses() {
+        return locations.keys();
+    }
+
+    /**
+     * @return the classes of the applications in the archives, in WEB-INF/classes or BOOT-INF/classes.
+     */
+    IntSet getRoots() {
+        return roots;
+    }
+
+    /**
+     * @return the number of classes found in the archives.
+     */
+    int size() {
+        return locations.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ZipArchiveReader reader : readers) {
+            reader.close();
+        }
+        readers.clear();
+        for (FileSystem fileSystem : fileSystems) {
+            fileSystem.close();
+        }
+    }
+
+    /**
+     * A class file in an archive, either an entry of a mapped archive or a file in a zip file system.
+     */
+    static final class Location {
+        private final int archive;
+        private final ZipArchiveReader reader;
+        private final ZipArchiveReader.Entry entry;
+        private final Path path;
+
+        private Location(int archive, ZipArchiveReader reader, ZipArchiveReader.Entry entry, Path path) {
+            this.archive = archive;
+            this.reader = reader;
+            this.entry = entry;
+            this.path = path;
+        }
+
+        /**
+         * @return the index of the archive the class file was found in.
+         */
+        int getArchive() {
+            return archive;
+        }
+
+        void read(ZipArchiveReader.EntryHandler handler) throws IOException {
+            if (path != null) {
+                byte[] content = Files.readAllBytes(path);
+                handler.handle(path.toString(), content, 0, content.length);
+            } else {
+                reader.read(entry, handler);
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * On-disk cache of {@link ScanResult}s, one entry per archive, of the class files found in scanned directories,
+ * and of the class files in the run-time image of each JDK.
+ * An entry is used if the archive still has the same path, size and modification time as when the entry was written.
+ * If only the modification time has changed, as when an archive is downloaded again, the entry is used if the
+ * content hash of the archive is still the same.
+ */
+public class IndexCache {
+    private static final Logger log = LoggerFactory.getLogger(IndexCache.class);
+
+    private static final int MAGIC = 0x4d4c4958; // MLIX
+    private static final int FORMAT_VERSION = 4;
+
+    /**
+     * Starts the name of the entries listing the class files of a JDK, so they can be told from those of archives.
+     */
+    static final String PLATFORM_ENTRY_PREFIX = "platform-";
+
+    private final Path directory;
+
+    public IndexCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param scanOptions identifies the options the archive was scanned with, since they decide what is recorded.
+     * @param symbols the symbol table the result is read into.
+     * @return the cached scan result for {@code archive}, or empty if it has not been scanned before with the
+     * same options, or has changed since it was.
+     */
+    public Optional<ScanResult> load(Path archive, String scanOptions, SymbolTable symbols) {
+        return load(archive, scanOptions, () -> new ScanResult(symbols));
+    }
+
+    /**
+     * @param newResult creates the result the entry is read into. The references are added to it one at a time,
+     *                  so they are spilled as they are read if the result spills them.
+     */
+    Optional<ScanResult> load(Path archive, String scanOptions, Supplier<ScanResult> newResult) {
+        return read(entryFor(archive.toAbsolutePath() + ":" + scanOptions), archive.toString(),
+                in -> scanOptions.equals(in.readUTF()) && ArchiveKey.read(in).matches(archive),
+                in -> readScanResult(in, newResult.get()));
+    }
+
+    /**
+     * Writes {@code result} as the cache entry for {@code archive} scanned with {@code scanOptions}.
+     */
+    public void store(Path archive, String scanOptions, ScanResult result) {
+        write(entryFor(archive.toAbsolutePath() + ":" + scanOptions), archive.toString(),
+                out -> {
+                    out.writeUTF(scanOptions);
+                    ArchiveKey.of(archive).write(out);
+                }, out -> writeScanResult(out, result));
+    }
+
+    /**
+     * @return the state of each class file found in {@code directory} the last time it was scanned with
+     * {@code scanOptions}, by path relative to the directory. Empty if it has not been scanned before.
+     */
+    Map<String, ClassFileState> loadDirectory(Path directory, String scanOptions, SymbolTable symbols) {
+        String path = directory.toAbsolutePath().toString();
+        return read(entryFor("directory:" + path + ":" + scanOptions), path,
+                in -> path.equals(in.readUTF()) && scanOptions.equals(in.readUTF()),
+                in -> readClassFileStates(in, symbols))
+                .orElse(Collections.<String, ClassFileState>emptyMap());
+    }
+
+    /**
+     * Writes the state of the class files found in {@code directory} when it was scanned with {@code scanOptions}.
+     */
+    void storeDirectory(Path directory, String scanOptions, Collection<ClassFileState> classFiles) {
+        String path = directory.toAbsolutePath().toString();
+        write(entryFor("directory:" + path + ":" + scanOptions), path,
+                out -> {
+                    out.writeUTF(path);
+                    out.writeUTF(scanOptions);
+                }, out -> {
+                    out.writeInt(classFiles.size());
+                    for (ClassFileState classFile : classFiles) {
+                        out.writeUTF(classFile.getPath());
+                        out.writeLong(classFile.getSize());
+                        out.writeLong(classFile.getLastModified());
+                        out.writeUTF(classFile.getContentHash());
+                        writeScanResult(out, classFile.getResult());
+                    }
+                });
+    }
+
+    /**
+     * @param jdk identifies the JDK, by its home and version.
+     * @param image the run-time image of the JDK, whose size and modification time must not have changed.
+     * @return the class files in the modules of {@code image}, as listed by {@link ClassLocator#listModules(Path)},
+     * or empty if they have not been listed before.
+     */
+    Optional<List<String>> loadPlatformListing(String jdk, Path image) {
+        return read(platformEntryFor(jdk), jdk,
+                in -> jdk.equals(in.readUTF()) && in.readLong() == Files.size(image)
+                        && in.readLong() == Files.getLastModifiedTime(image).toMillis(),
+                in -> {
+                    int size = in.readInt();
+                    List<String> classFiles = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        classFiles.add(in.readUTF());
+                    }
+                    return classFiles;
+                });
+    }
+
+    /**
+     * Writes the class files in the modules of the run-time image {@code image} of {@code jdk}.
+     */
+    void storePlatformListing(String jdk, Path image, List<String> classFiles) {
+        write(platformEntryFor(jdk), jdk,
+                out -> {
+                    out.writeUTF(jdk);
+                    out.writeLong(Files.size(image));
+                    out.writeLong(Files.getLastModifiedTime(image).toMillis());
+                }, out -> {
+                    out.writeInt(classFiles.size());
+                    for (String classFile : classFiles) {
+                        out.writeUTF(classFile);
+                    }
+                });
+    }
+
+    private static Map<String, ClassFileState> readClassFileStates(DataInputStream in, SymbolTable symbols) throws IOException {
+        int size = in.readInt();
+        Map<String, ClassFileState> classFiles = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String path = in.readUTF();
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            String contentHash = in.readUTF();
+            classFiles.put(path, new ClassFileState(path, fileSize, lastModified, contentHash, readScanResult(in, new ScanResult(symbols))));
+        }
+        return classFiles;
+    }
+
+    private <T> Optional<T> read(Path entry, String source, HeaderCheck headerCheck, BodyReader<T> bodyReader) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !headerCheck.matches(in)) {
+                return Optional.empty();
+            }
+            return Optional.of(bodyReader.read(in));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not read index cache entry " + entry + " for " + source, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The entry is written to a temporary file that is moved into place,
+     * so concurrent builds never see a partially written entry.
+     */
+    private void write(Path entry, String source, EntryWriter headerWriter, EntryWriter bodyWriter) {
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                headerWriter.write(out);
+                bodyWriter.write(out);
+            }
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write index cache entry " + entry + " for " + source, e);
+        }
+    }
+
+    private Path entryFor(String identity) {
+        return directory.resolve(hex(digest(identity.getBytes(StandardCharsets.UTF_8))) + ".idx");
+    }
+
+    private Path platformEntryFor(String jdk) {
+        return directory.resolve(PLATFORM_ENTRY_PREFIX + entryFor(jdk).getFileName());
+    }
+
+    private static void writeScanResult(DataOutputStream out, ScanResult result) throws IOException {
+        LocalSymbols symbols = new LocalSymbols(result.symbols);
+        symbols.addAll(result.classesVisited);
+        symbols.addAll(result.methodsVisited);
+        symbols.addAll(result.annotationReferenced);
+        symbols.addReferences(result.classesReferenced);
+        symbols.addReferences(result.methodsReferenced);
+        symbols.addReferences(result.methodsByClass);
+        symbols.addReferences(result.supertypesByClass);
+
+        symbols.write(out);
+        writeIds(out, symbols, result.classesVisited);
+        writeIds(out, symbols, result.methodsVisited);
+        writeIds(out, symbols, result.annotationReferenced);
+        writeReferences(out, symbols, result.classesReferenced);
+        writeReferences(out, symbols, result.methodsReferenced);
+        writeReferences(out, symbols, result.methodsByClass);
+        writeReferences(out, symbols, result.supertypesByClass);
+    }
+
+    private static ScanResult readScanResult(DataInputStream in, ScanResult result) throws IOException {
+        int[] ids = LocalSymbols.read(in, result.symbols);
+        readIds(in, ids, result.classesVisited);
+        readIds(in, ids, result.methodsVisited);
+        readIds(in, ids, result.annotationReferenced);
+        if (result.spillsReferences()) {
+            readReferences(in, ids, result::addReferencedClass);
+            readReferences(in, ids, result::addReferencedMethod);
+        } else {
+            readReferences(in, ids, result.classesReferenced);
+            readReferences(in, ids, result.methodsReferenced);
+        }
+        readReferences(in, ids, result.methodsByClass);
+        readReferences(in, ids, result.supertypesByClass);
+        return result;
+    }
+
+    private static void writeIds(DataOutputStream out, LocalSymbols symbols, IntSet values) throws IOException {
+        out.writeInt(values.size());
+        for (int value : values.toArray()) {
+            out.writeInt(symbols.indexOf(value));
+        }
+    }
+
+    private static void readIds(DataInputStream in, int[] ids, IntSet target) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(ids[in.readInt()]);
+        }
+    }
+
+    private static void writeReferences(DataOutputStream out, LocalSymbols symbols, IntObjectMap<IntSet> references) throws IOException {
+        out.writeInt(references.size());
+        for (int key : references.keys()) {
+            out.writeInt(symbols.indexOf(key));
+            writeIds(out, symbols, references.get(key));
+        }
+    }
+
+    private static void readReferences(DataInputStream in, int[] ids, IntObjectMap<IntSet> target) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int key = ids[in.readInt()];
+            IntSet values = new IntSet();
+            readIds(in, ids, values);
+            target.put(key, values);
+        }
+    }
+
+    private static void readReferences(DataInputStream in, int[] ids, ReferenceAdder target) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int key = ids[in.readInt()];
+            int values = in.readInt();
+            for (int j = 0; j < values; j++) {
+                target.add(key, ids[in.readInt()]);
+            }
+        }
+    }
+
+    private interface ReferenceAdder {
+        void add(int referenced, int referencedFrom);
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        MessageDigest digest = sha1();
+        digest.update(bytes);
+        return digest.digest();
+    }
+
+    static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private interface HeaderCheck {
+        boolean matches(DataInputStream in) throws IOException;
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface BodyReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Identifies the exact version of an archive a cache entry was made from.
+     */
+    private static class ArchiveKey {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+
+        private ArchiveKey(String path, long size, long lastModified, String contentHash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+
+        static ArchiveKey of(Path archive) throws IOException {
+            return new ArchiveKey(archive.toAbsolutePath().toString(),
+                    Files.size(archive),
+                    Files.getLastModifiedTime(archive).toMillis(),
+                    contentHash(archive));
+        }
+
+        /**
+         * Trusts the path, size and modification time, so the archive is only hashed if the modification time
+         * is all that has changed.
+         */
+        boolean matches(Path archive) throws IOException {
+            if (!path.equals(archive.toAbsolutePath().toString()) || size != Files.size(archive)) {
+                return false;
+            }
+            return lastModified == Files.getLastModifiedTime(archive).toMillis()
+                    || contentHash.equals(contentHash(archive));
+        }
+
+        private static String contentHash(Path archive) throws IOException {
+            MessageDigest digest = sha1();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream is = Files.newInputStream(archive)) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return hex(digest.digest());
+        }
+
+        static ArchiveKey read(DataInputStream in) throws IOException {
+            return new ArchiveKey(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeUTF(contentHash);
+        }
+    }
+
+    /**
+     * The symbols used in an entry. Every symbol is written once, after the symbols it is made of,
+     * and referred to by its index in the entry.
+     */
+    private static class LocalSymbols {
+        private static final byte STRING = 0;
+        private static final byte PAIR = 1;
+
+        private final SymbolTable symbols;
+
+        /**
+         * The index of each symbol plus one, keyed by its id, so no index is stored as 0.
+         */
+        private final LongIntMap indexes = new LongIntMap();
+        private int[] ordered = new int[64];
+        private int size;
+
+        LocalSymbols(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        void add(int id) {
+            if (indexes.get(id) != 0) {
+                return;
+            }
+            if (symbols.isPair(id)) {
+                add(symbols.first(id));
+                add(symbols.second(id));
+            }
+            int index = size++;
+            if (index == ordered.length) {
+                ordered = Arrays.copyOf(ordered, index * 2);
+            }
+            ordered[index] = id;
+            indexes.put(id, index + 1);
+        }
+
+        void addAll(IntSet ids) {
+            ids.forEach(this::add);
+        }
+
+        void addReferences(IntObjectMap<IntSet> references) {
+            references.forEach((values, key) -> {
+                add(key);
+                addAll(values);
+            });
+        }
+
+        int indexOf(int id) {
+            return indexes.get(id) - 1;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                int id = ordered[i];
+                if (symbols.isPair(id)) {
+                    out.writeByte(PAIR);
+                    out.writeInt(indexOf(symbols.first(id)));
+                    out.writeInt(indexOf(symbols.second(id)));
+                } else {
+                    out.writeByte(STRING);
+                    out.writeUTF(symbols.name(id));
+                }
+            }
+        }
+
+        /**
+         * @return the id in {@code symbols} of each symbol in the entry, by index.
+         */
+        static int[] read(DataInputStream in, SymbolTable symbols) throws IOException {
+            int[] ids = new int[in.readInt()];
+            for (int i = 0; i < ids.length; i++) {
+                byte kind = in.readByte();
+                if (kind == PAIR) {
+                    ids[i] = symbols.pair(ids[in.readInt()], ids[in.readInt()]);
+                } else {
+                    ids[i] = symbols.intern(in.readUTF());
+                }
+            }
+            return ids;
+        }
+    }
+}
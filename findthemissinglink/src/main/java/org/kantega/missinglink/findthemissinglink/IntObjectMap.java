@@ -0,0 +1,150 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Map from positive ints to objects, stored in open addressing arrays without boxing the keys.
+ * Not thread safe.
+ */
+final class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    IntObjectMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Only positive keys can be added, was " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = IntSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    V computeIfAbsent(int key, IntFunction<V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(ObjIntConsumer<V> consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                consumer.accept((V) values[slot], keys[slot]);
+            }
+        }
+    }
+
+    PrimitiveIterator.OfInt keyIterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int key = keys[slot];
+                slot = advance(slot + 1);
+                return key;
+            }
+        };
+    }
+
+    int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != 0) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    private int slotOf(int key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int slot = IntSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0) {
+                put(oldKeys[slot], (V) oldValues[slot]);
+            }
+        }
+    }
+}
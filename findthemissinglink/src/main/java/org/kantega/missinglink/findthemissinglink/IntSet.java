@@ -0,0 +1,172 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of positive ints, stored in a single open addressing array without boxing.
+ * Zero marks an empty slot, and can not be added.
+ * Not thread safe.
+ */
+final class IntSet {
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private int size;
+
+    IntSet() {
+        keys = new int[MIN_CAPACITY];
+    }
+
+    IntSet(IntSet other) {
+        keys = other.keys.clone();
+        size = other.size;
+    }
+
+    boolean add(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Only positive values can be added, was " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    void addAll(IntSet other) {
+        for (int key : other.keys) {
+            if (key != 0) {
+                add(key);
+            }
+        }
+    }
+
+    boolean contains(int key) {
+        if (key <= 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void forEach(IntConsumer consumer) {
+        for (int key : keys) {
+            if (key != 0) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != 0) {
+                values[i++] = key;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the values in ascending order.
+     */
+    int[] toSortedArray() {
+        int[] values = toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int key = keys[slot];
+                slot = advance(slot + 1);
+                return key;
+            }
+        };
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keys;
+        keys = new int[capacity];
+        size = 0;
+        for (int key : old) {
+            if (key != 0) {
+                add(key);
+            }
+        }
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntSet)) return false;
+        IntSet other = (IntSet) o;
+        if (size != other.size) return false;
+        for (int key : keys) {
+            if (key != 0 && !other.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int key : keys) {
+            hash += key;
+        }
+        return hash;
+    }
+}
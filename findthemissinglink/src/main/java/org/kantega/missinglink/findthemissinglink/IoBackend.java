@@ -0,0 +1,17 @@
+package org.kantega.missinglink.findthemissinglink;
+
+/**
+ * How archives are read when they are scanned.
+ */
+public enum IoBackend {
+    /**
+     * Archives are opened as zip file systems, and each class file is read through a stream.
+     */
+    ZIPFS,
+
+    /**
+     * Archives are memory-mapped, and class files are inflated into reused buffers
+     * from the entries listed in the central directory.
+     */
+    MAPPED
+}
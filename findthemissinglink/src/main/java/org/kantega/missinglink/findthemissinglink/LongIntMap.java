@@ -0,0 +1,77 @@
+package org.kantega.missinglink.findthemissinglink;
+
+/**
+ * Map from non-zero longs to positive ints, stored in open addressing arrays without boxing the keys or values.
+ * Not thread safe.
+ */
+final class LongIntMap {
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap() {
+        keys = new long[MIN_CAPACITY];
+        values = new int[MIN_CAPACITY];
+    }
+
+    /**
+     * @return the value of {@code key}, or 0 if it has none.
+     */
+    int get(long key) {
+        if (key == 0) {
+            return 0;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    void put(long key, int value) {
+        if (key == 0 || value <= 0) {
+            throw new IllegalArgumentException("Only non-zero keys and positive values can be added, was " + key + "=" + value);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0) {
+                put(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
@@ -0,0 +1,48 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A set of package prefixes, that tells whether a name starts with any of them in one binary search.
+ * Prefixes that start with another prefix in the set are dropped, since they can never be the only match.
+ * The remaining prefixes are sorted, and a name can then only start with the greatest prefix that is not after it.
+ */
+final class PackagePrefixes {
+    private final String[] prefixes;
+
+    PackagePrefixes(Collection<String> prefixes) {
+        String[] sorted = prefixes.toArray(new String[0]);
+        Arrays.sort(sorted);
+        List<String> minimized = new ArrayList<>();
+        for (String prefix : sorted) {
+            if (minimized.isEmpty() || !prefix.startsWith(minimized.get(minimized.size() - 1))) {
+                minimized.add(prefix);
+            }
+        }
+        this.prefixes = minimized.toArray(new String[0]);
+    }
+
+    boolean isEmpty() {
+        return prefixes.length == 0;
+    }
+
+    /**
+     * @return true if {@code name} starts with any of the prefixes.
+     */
+    boolean matches(String name) {
+        int index = Arrays.binarySearch(prefixes, name);
+        if (index >= 0) {
+            return true;
+        }
+        int before = -index - 2;
+        return before >= 0 && name.startsWith(prefixes[before]);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(prefixes);
+    }
+}
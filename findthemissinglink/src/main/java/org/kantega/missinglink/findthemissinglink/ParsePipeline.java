@@ -0,0 +1,115 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Parses the class files of one archive on several threads. The thread reading the archive submits each class
+ * file as it is inflated, and a fixed number of workers parse them, each into its own {@link ScanResult}.
+ * The queue between them is bounded, so reading blocks while the workers are behind, and only a few class files
+ * are held in memory at a time. The workers run on a pool shared with the pipelines of other archives.
+ */
+final class ParsePipeline implements Closeable {
+    private static final byte[] END = new byte[0];
+    private static final int QUEUED_PER_WORKER = 16;
+
+    private final BlockingQueue<byte[]> queue;
+    private final List<Future<ScanResult>> workers = new ArrayList<>();
+    private final Supplier<ScanResult> newResult;
+
+    /**
+     * @param executor runs the workers, and must have {@code threads} threads free for them, since each worker
+     *                 runs until the pipeline is finished.
+     * @param newResult creates the result of each worker, and the merged result.
+     */
+    ParsePipeline(ExecutorService executor, int threads, Supplier<ScanResult> newResult, PlatformClasses.ClassParser parser) {
+        this.newResult = newResult;
+        queue = new ArrayBlockingQueue<>(threads * QUEUED_PER_WORKER);
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> parse(parser)));
+        }
+    }
+
+    private ScanResult parse(PlatformClasses.ClassParser parser) throws InterruptedException {
+        ScanResult result = newResult.get();
+        RuntimeException failure = null;
+        for (byte[] content = queue.take(); content != END; content = queue.take()) {
+            if (failure == null) {
+                try {
+                    parser.parse(new ClassReader(content), content.length, result);
+                } catch (RuntimeException e) {
+                    // Kept taking class files, so reading is not blocked by a full queue.
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        result.closeReferences();
+        return result;
+    }
+
+    /**
+     * Queues a copy of a class file to be parsed, waiting while the queue is full.
+     */
+    void submit(byte[] buffer, int offset, int length) throws IOException {
+        put(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Waits for the workers to parse every class file submitted.
+     *
+     * @return what the workers found, merged.
+     */
+    ScanResult finish() throws IOException {
+        for (int i = 0; i < workers.size(); i++) {
+            put(END);
+        }
+        ScanResult merged = newResult.get();
+        try {
+            for (Future<ScanResult> worker : workers) {
+                merged.addAll(worker.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to parse", e.getCause());
+        }
+        return merged;
+    }
+
+    private void put(byte[] content) throws IOException {
+        try {
+            queue.put(content);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        }
+    }
+
+    /**
+     * Stops the workers still running, if the pipeline was not finished.
+     */
+    @Override
+    public void close() {
+        for (Future<ScanResult> worker : workers) {
+            worker.cancel(true);
+        }
+    }
+}
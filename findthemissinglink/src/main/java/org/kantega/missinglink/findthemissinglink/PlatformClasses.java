@@ -0,0 +1,171 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The classes of a JDK. Their names are listed when an instance is made, from the run-time image on Java 9 and
+ * later or from the boot classpath archives on Java 8, and a class is only parsed the first time its methods or
+ * supertypes are needed. Parsed classes are kept, so each platform class is parsed at most once by an instance.
+ * <p>
+ * The classes of each JDK are kept for the JVM, with a symbol table of their own, and are shared by visitors on
+ * several threads through a {@link PlatformView} of each visitor's table. The class files of a run-time image are
+ * also kept in the index cache, so a new JVM does not walk the image again.
+ */
+final class PlatformClasses {
+    /**
+     * The platform classes of each JDK, keyed by {@code java.home} and version.
+     */
+    private static final ConcurrentMap<String, PlatformClasses> platforms = new ConcurrentHashMap<>();
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final ClassLocator locator;
+    private final ScanResult names;
+    private final ConcurrentMap<Integer, ScanResult> parsedClasses = new ConcurrentHashMap<>();
+
+    /**
+     * @param bootClasspath the archives of the boot classpath, or an empty list if the platform classes
+     *                      are found in the run-time image.
+     */
+    private PlatformClasses(String jdk, List<String> bootClasspath, IndexCache indexCache) throws IOException {
+        locator = new ClassLocator(symbols, IoBackend.MAPPED);
+        names = new ScanResult(symbols);
+        if (bootClasspath.isEmpty()) {
+            Path modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules");
+            locator.addModules(modules, listModules(jdk, modules, indexCache), 0);
+        } else {
+            for (int i = 0; i < bootClasspath.size(); i++) {
+                locator.addArchive(Paths.get(bootClasspath.get(i)), i);
+            }
+        }
+        for (int className : locator.getClasses()) {
+            names.classesVisited.add(className);
+        }
+    }
+
+    /**
+     * @param bootClasspath the archives of the boot classpath of the running JDK, used if they have not been
+     *                      listed before in this JVM.
+     * @param indexCache where the class files of the run-time image are kept from one JVM to the next. May be null.
+     * @return the platform classes of the running JDK.
+     */
+    static PlatformClasses forRunningJdk(List<String> bootClasspath, IndexCache indexCache) throws IOException {
+        String javaHome = System.getProperty("java.home");
+        String javaVersion = System.getProperty("java.runtime.version", System.getProperty("java.version"));
+        try {
+            return platforms.computeIfAbsent(javaHome + ":" + javaVersion, jdk -> {
+                try {
+                    return new PlatformClasses(jdk, bootClasspath, indexCache);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not list platform classes", e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the class files of the run-time image, from the index cache unless the image has changed since
+     * they were listed. Listing them walks the whole image, while the archives of the boot classpath on Java 8
+     * only have their central directories read.
+     */
+    private static List<String> listModules(String jdk, Path modules, IndexCache indexCache) throws IOException {
+        Path image = Paths.get(System.getProperty("java.home"), "lib", "modules");
+        if (indexCache == null || !Files.isRegularFile(image)) {
+            return ClassLocator.listModules(modules);
+        }
+        Optional<List<String>> cached = indexCache.loadPlatformListing(jdk, image);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<String> classFiles = ClassLocator.listModules(modules);
+        indexCache.storePlatformListing(jdk, image, classFiles);
+        return classFiles;
+    }
+
+    /**
+     * @return the symbol table of the platform classes, which all their results use.
+     */
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the names of all platform classes, as classes visited.
+     */
+    ScanResult getNames() {
+        return names;
+    }
+
+    /**
+     * @param classes the classes whose methods are referenced, and the classes inherited from.
+     * @return the platform classes that are needed: {@code classes} and their supertypes.
+     * Classes only referenced need nothing but their names.
+     */
+    ScanResult resolve(IntSet classes, ClassParser parser) throws IOException {
+        ScanResult needed = new ScanResult(symbols);
+        IntSet seen = new IntSet();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        classes.forEach(worklist::add);
+        while (!worklist.isEmpty()) {
+            int className = worklist.pop();
+            ScanResult parsed = seen.add(className) ? parse(className, parser) : null;
+            if (parsed != null) {
+                needed.addAll(parsed);
+                parsed.supertypesByClass.forEach((supertypes, subclass) -> supertypes.forEach(worklist::add));
+            }
+        }
+        return needed;
+    }
+
+    /**
+     * @return the number of platform classes parsed so far.
+     */
+    int getParsedCount() {
+        return parsedClasses.size();
+    }
+
+    /**
+     * @return the methods and supertypes of {@code className}, or null if it is not a platform class.
+     */
+    private ScanResult parse(int className, ClassParser parser) throws IOException {
+        ScanResult parsed = parsedClasses.get(className);
+        if (parsed != null || locator.find(className) == null) {
+            return parsed;
+        }
+        // The archives of the boot classpath are read through readers that are not thread safe.
+        synchronized (this) {
+            parsed = parsedClasses.get(className);
+            if (parsed == null) {
+                ScanResult classResult = new ScanResult(symbols);
+                locator.find(className).read((name, buffer, offset, length) ->
+                        parser.parse(new ClassReader(buffer, offset, length), length, classResult));
+                parsedClasses.put(className, classResult);
+                parsed = classResult;
+            }
+        }
+        return parsed;
+    }
+
+    interface ClassParser {
+        /**
+         * Records what a platform class declares in {@code partial}, using the symbols of {@code partial}.
+         * What it references is not needed.
+         */
+        void parse(ClassReader cr, int length, ScanResult partial);
+    }
+}
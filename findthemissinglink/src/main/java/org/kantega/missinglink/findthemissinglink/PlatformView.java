@@ -0,0 +1,105 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The {@link PlatformClasses} of the running JDK, with the ids of the symbol table of a scan. The platform classes
+ * are kept for the JVM with a table of their own, and what a scan needs of them is translated to its table,
+ * so the table of a scan is freed with it. May be shared by visitors on several threads.
+ */
+final class PlatformView {
+    private final PlatformClasses platform;
+    private final SymbolTable symbols;
+
+    /**
+     * The id in {@link #symbols} of each platform symbol translated so far, indexed by its platform id, or 0.
+     */
+    private int[] translated = new int[0];
+    private ScanResult names;
+
+    PlatformView(PlatformClasses platform, SymbolTable symbols) {
+        this.platform = platform;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the names of all platform classes, as classes visited.
+     */
+    synchronized ScanResult getNames() {
+        if (names == null) {
+            names = translate(platform.getNames());
+        }
+        return names;
+    }
+
+    /**
+     * @param methodOwners the classes whose methods are referenced.
+     * @param supertypesByClass the supertypes of the classes scanned.
+     * @return the platform classes that are needed: the classes whose methods are referenced, the classes
+     * inherited from, and their supertypes.
+     * @see PlatformClasses#resolve(IntSet, PlatformClasses.ClassParser)
+     */
+    ScanResult resolve(IntSet methodOwners, IntObjectMap<IntSet> supertypesByClass, PlatformClasses.ClassParser parser) throws IOException {
+        IntSet classes = new IntSet();
+        methodOwners.forEach(className -> addPlatformClass(className, classes));
+        supertypesByClass.forEach((supertypes, className) -> supertypes.forEach(supertype -> addPlatformClass(supertype, classes)));
+        ScanResult needed = platform.resolve(classes, parser);
+        synchronized (this) {
+            return translate(needed);
+        }
+    }
+
+    /**
+     * @return the number of platform classes parsed so far in this JVM.
+     */
+    int getParsedCount() {
+        return platform.getParsedCount();
+    }
+
+    /**
+     * Adds the platform id of {@code className} to {@code classes}. Classes the platform has never seen are left
+     * out, without being interned in its table.
+     */
+    private void addPlatformClass(int className, IntSet classes) {
+        int platformClass = platform.getSymbols().find(symbols.name(className));
+        if (platformClass != 0) {
+            classes.add(platformClass);
+        }
+    }
+
+    /**
+     * @return what {@code parsed} declares, with the ids of {@link #symbols}. Platform classes reference nothing.
+     */
+    private ScanResult translate(ScanResult parsed) {
+        ScanResult result = new ScanResult(symbols);
+        parsed.classesVisited.forEach(id -> result.classesVisited.add(translate(id)));
+        parsed.methodsVisited.forEach(id -> result.methodsVisited.add(translate(id)));
+        parsed.annotationReferenced.forEach(id -> result.annotationReferenced.add(translate(id)));
+        translate(parsed.methodsByClass, result.methodsByClass);
+        translate(parsed.supertypesByClass, result.supertypesByClass);
+        return result;
+    }
+
+    private void translate(IntObjectMap<IntSet> source, IntObjectMap<IntSet> target) {
+        source.forEach((values, key) -> {
+            IntSet translatedValues = target.computeIfAbsent(translate(key), k -> new IntSet());
+            values.forEach(value -> translatedValues.add(translate(value)));
+        });
+    }
+
+    private int translate(int platformId) {
+        if (platformId >= translated.length) {
+            translated = Arrays.copyOf(translated, Math.max(platformId + 1, translated.length * 2));
+        }
+        int id = translated[platformId];
+        if (id == 0) {
+            SymbolTable platformSymbols = platform.getSymbols();
+            id = platformSymbols.isPair(platformId)
+                    ? symbols.pair(translate(platformSymbols.first(platformId)), translate(platformSymbols.second(platformId)))
+                    : symbols.intern(platformSymbols.name(platformId));
+            translated[platformId] = id;
+        }
+        return id;
+    }
+}
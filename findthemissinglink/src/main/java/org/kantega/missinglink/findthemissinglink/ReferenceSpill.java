@@ -0,0 +1,128 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The references of a scan that are spilled to disk as they are found, instead of being kept in the scan results.
+ * Each {@link ScanResult} written to by a thread has a small {@link Buffer} of its own, which is added to the
+ * {@link SpilledReferences} shared by all threads when it is full. The owners of the methods referenced are kept,
+ * since they decide which platform classes are parsed.
+ * Keeps track of the bytes buffered, so what a scan holds in memory can be compared to its budget.
+ */
+final class ReferenceSpill {
+    private final SymbolTable symbols;
+    private final SpilledReferences classes;
+    private final SpilledReferences methods;
+    private final int bufferedEdges;
+    private final IntSet methodOwners = new IntSet();
+    private long bufferedBytes;
+    private long peakBufferedBytes;
+
+    /**
+     * @param bufferedEdges the number of edges of each kind a buffer holds before it is added to the shared references.
+     */
+    ReferenceSpill(SymbolTable symbols, SpilledReferences classes, SpilledReferences methods, int bufferedEdges) {
+        this.symbols = symbols;
+        this.classes = classes;
+        this.methods = methods;
+        this.bufferedEdges = Math.max(1, bufferedEdges);
+        buffered(classes.getBufferedBytes() + methods.getBufferedBytes());
+    }
+
+    Buffer newBuffer() {
+        return new Buffer();
+    }
+
+    /**
+     * @return the owner classes of the methods referenced. Only read when the scan is done.
+     */
+    IntSet getMethodOwners() {
+        return methodOwners;
+    }
+
+    /**
+     * @return the most bytes held at once by the buffers, and the shared references.
+     */
+    synchronized long getPeakBufferedBytes() {
+        return peakBufferedBytes;
+    }
+
+    private synchronized void buffered(long bytes) {
+        bufferedBytes += bytes;
+        peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+    }
+
+    /**
+     * References found by one thread. The edges are only allocated when the first reference is added,
+     * and are freed when the buffer is flushed for the last time.
+     */
+    final class Buffer {
+        private long[] classEdges;
+        private long[] methodEdges;
+        private int classCount;
+        private int methodCount;
+
+        void addClass(int referenced, int referencedFrom) {
+            allocate();
+            if (classCount == classEdges.length) {
+                flushClasses();
+            }
+            classEdges[classCount++] = SpilledReferences.edge(referenced, referencedFrom);
+        }
+
+        void addMethod(int referenced, int referencedFrom) {
+            allocate();
+            if (methodCount == methodEdges.length) {
+                flushMethods();
+            }
+            methodEdges[methodCount++] = SpilledReferences.edge(referenced, referencedFrom);
+        }
+
+        /**
+         * Adds what is buffered to the shared references, and frees the buffer until more references are added.
+         */
+        void close() {
+            if (classEdges == null) {
+                return;
+            }
+            flushClasses();
+            flushMethods();
+            classEdges = null;
+            methodEdges = null;
+            buffered(-2L * bufferedEdges * Long.BYTES);
+        }
+
+        private void allocate() {
+            if (classEdges == null) {
+                buffered(2L * bufferedEdges * Long.BYTES);
+                classEdges = new long[bufferedEdges];
+                methodEdges = new long[bufferedEdges];
+            }
+        }
+
+        private void flushClasses() {
+            add(classes, classEdges, classCount);
+            classCount = 0;
+        }
+
+        private void flushMethods() {
+            synchronized (methodOwners) {
+                for (int i = 0; i < methodCount; i++) {
+                    methodOwners.add(symbols.classOf(SpilledReferences.referenced(methodEdges[i])));
+                }
+            }
+            add(methods, methodEdges, methodCount);
+            methodCount = 0;
+        }
+
+        private void add(SpilledReferences references, long[] edges, int count) {
+            try {
+                references.addAll(edges, count);
+            } catch (IOException e) {
+                // Thrown from the scan of a class, so it is remembered by the references, which fail when read.
+                throw new UncheckedIOException("Could not spill references", e);
+            }
+        }
+    }
+}
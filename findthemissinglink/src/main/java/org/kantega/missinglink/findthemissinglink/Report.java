@@ -1,157 +1,348 @@
 package org.kantega.missinglink.findthemissinglink;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * The classes and methods visited and referenced when scanning a classpath.
+ * Everything is kept as symbols, and the getters are read-only views that turn them into strings
+ * when they are read.
+ * <p>
+ * Missing classes and methods are found together, the first time either is asked for, in one pass over the
+ * referenced classes and methods split into fork-join tasks. The result is kept for later calls.
+ * <p>
+ * When references are spilled to disk, the report only holds what is declared, and the missing links are found by
+ * merging the spilled references, which are deleted afterwards. The referenced classes and methods are then empty.
+ */
 public class Report {
-    private final Map<String, Set<String>> classesReferenced;
-    private final Map<String, Set<String>> methodsReferenced;
-    private final Set<String> annotationsReferenced;
-    private final Set<String> classesVisited;
-    private final Set<String> methodsVisited;
-    private final List<String> ignorePackages;
-    private final List<String> ignoreReferencesInPackages;
+    private final SymbolTable symbols;
+    private final IntObjectMap<IntSet> classesReferenced;
+    private final IntObjectMap<IntSet> methodsReferenced;
+    private final IntSet annotationsReferenced;
+    private final IntSet classesVisited;
+    private final IntSet methodsVisited;
+    private final IntObjectMap<IntSet> supertypesByClass;
+    private final ClassHierarchy hierarchy;
+    private final ScanProfile scanProfile;
+    private final PackagePrefixes ignorePackages;
+    private final PackagePrefixes ignoreReferencesInPackages;
     private final boolean ignoreAnnotationReferences;
+    private final SpilledReferences spilledClassReferences;
+    private final SpilledReferences spilledMethodReferences;
+    private MissingLinks missingLinks;
 
+    /**
+     * @deprecated reports are made by {@link ClassFileVisitor}, which keeps everything as symbols. The strings given
+     * here are interned into a symbol table of their own. No supertypes are given, so a method is only found in
+     * the class that declares it.
+     */
+    @Deprecated
     public Report(Set<String> classesVisited, Map<String, Set<String>> classesReferenced, Set<String> methodsVisited, Map<String, Set<String>> methodsReferenced, Set<String> annotationsReferenced, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) {
-        this.classesVisited = classesVisited;
-        this.classesReferenced = classesReferenced;
-        this.methodsVisited = methodsVisited;
-        this.methodsReferenced = methodsReferenced;
-        this.annotationsReferenced = annotationsReferenced;
-        this.ignorePackages = ignorePackages;
-        this.ignoreReferencesInPackages = ignoreReferencesInPackages;
+        this(scanResultOf(classesVisited, classesReferenced, methodsVisited, methodsReferenced, annotationsReferenced),
+                ScanProfile.THOROUGH, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+    }
+
+    Report(ScanResult result, ScanProfile scanProfile, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) {
+        this(result, null, null, scanProfile, ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+    }
+
+    /**
+     * @param result what is declared, and the references kept in memory.
+     * @param spilledClassReferences the class references spilled to disk, or null if they are all in {@code result}.
+     * @param spilledMethodReferences the method references spilled to disk, or null if they are all in {@code result}.
+     */
+    Report(ScanResult result, SpilledReferences spilledClassReferences, SpilledReferences spilledMethodReferences, ScanProfile scanProfile,
+           List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) {
+        this.spilledClassReferences = spilledClassReferences;
+        this.spilledMethodReferences = spilledMethodReferences;
+        this.symbols = result.symbols;
+        this.classesVisited = result.classesVisited;
+        this.classesReferenced = result.classesReferenced;
+        this.methodsVisited = result.methodsVisited;
+        this.methodsReferenced = result.methodsReferenced;
+        this.supertypesByClass = result.supertypesByClass;
+        this.hierarchy = new ClassHierarchy(result.symbols, result.supertypesByClass, result.methodsByClass);
+        this.annotationsReferenced = result.annotationReferenced;
+        this.scanProfile = scanProfile;
+        this.ignorePackages = new PackagePrefixes(ignorePackages);
+        this.ignoreReferencesInPackages = new PackagePrefixes(ignoreReferencesInPackages);
         this.ignoreAnnotationReferences = ignoreAnnotationReferences;
     }
 
+    private static ScanResult scanResultOf(Set<String> classesVisited, Map<String, Set<String>> classesReferenced, Set<String> methodsVisited,
+                                           Map<String, Set<String>> methodsReferenced, Set<String> annotationsReferenced) {
+        ScanResult result = new ScanResult();
+        SymbolTable symbols = result.symbols;
+        for (String className : classesVisited) {
+            result.classesVisited.add(symbols.intern(className));
+        }
+        for (String method : methodsVisited) {
+            int id = internClassOrMethod(symbols, method);
+            result.methodsVisited.add(id);
+            if (symbols.isPair(id)) {
+                result.addClassMethodMapping(symbols.first(id), symbols.second(id));
+            }
+        }
+        for (String annotation : annotationsReferenced) {
+            result.annotationReferenced.add(symbols.intern(annotation));
+        }
+        classesReferenced.forEach((className, referencedFrom) -> referencedFrom.forEach(from ->
+                result.addReferencedClass(symbols.intern(className), internClassOrMethod(symbols, from))));
+        methodsReferenced.forEach((method, referencedFrom) -> referencedFrom.forEach(from ->
+                result.addReferencedMethod(internClassOrMethod(symbols, method), internClassOrMethod(symbols, from))));
+        return result;
+    }
+
+    /**
+     * @return the id of a class or method written as a string, like {@link SymbolTable#findClassOrMethod(String)}
+     * finds it, interning it if needed.
+     */
+    private static int internClassOrMethod(SymbolTable symbols, String classOrMethod) {
+        int dot = classOrMethod.indexOf('.');
+        int paren = classOrMethod.indexOf('(', dot);
+        if (dot < 0 || paren < 0) {
+            return symbols.intern(classOrMethod);
+        }
+        return symbols.method(classOrMethod.substring(0, dot), classOrMethod.substring(dot + 1, paren), classOrMethod.substring(paren));
+    }
+
+    /**
+     * @return how much of each class file was parsed when the classpath was scanned.
+     */
+    public ScanProfile getScanProfile() {
+        return scanProfile;
+    }
+
     /**
      * @return FQN of all classes visited when scanning the classpath.
      */
     public Set<String> getClassesVisited() {
-        return classesVisited;
+        return new SymbolSet(symbols, classesVisited);
     }
 
     /**
      * @return FQN of all classes referenced by visited classes and where they where referenced.
      */
     public Map<String, Set<String>> getClassesReferenced() {
-        return classesReferenced;
+        return new SymbolMap(symbols, classesReferenced);
     }
 
     /**
      * @return FQN of all methods visited when scanning the classpath.
+     * Only the class declaring a method is included, inherited methods are resolved when missing methods are found.
      */
     public Set<String> getMethodsVisited() {
-        return methodsVisited;
+        return new SymbolSet(symbols, methodsVisited);
     }
 
     /**
      * @return FQN of all methods referenced in methods of visited classes and where they where referenced.
      */
     public Map<String, Set<String>> getMethodsReferenced() {
-        return methodsReferenced;
+        return new SymbolMap(symbols, methodsReferenced);
     }
 
     /**
-     * @return Classes that are referenced but have not been visited, and the classes
+     * @return Classes that are referenced but have not been visited or listed, and the classes
      * where they was referenced.
      * Classes whose package starts with an entry in {@code ignoredPackages} are removed.
      * Missing classes referenced in an entry in {@code ignoreReferencesInPackages} are removed.
      */
     public Map<String, Set<String>> getClassesMissing() {
-        Map<String, Set<String>> missingClasses = new HashMap<>(classesReferenced);
-        Set<String> classes = missingClasses.keySet();
-        classes.removeAll(classesVisited);
-        if(ignoreAnnotationReferences) {
-            classes.removeAll(annotationsReferenced);
-        }
-
-        Set<String> ignoredPackages = getIgnoredPackages(classes);
-        classes.removeAll(ignoredPackages);
-
-        if(!ignoreReferencesInPackages.isEmpty()){
-            missingClasses = removeMissingReferencesInIgnoredPackages(missingClasses);
-        }
+        return new SymbolMap(symbols, findClassesMissing());
+    }
 
-        return missingClasses;
+    IntObjectMap<IntSet> findClassesMissing() {
+        return findMissingLinks().classes;
     }
 
     /**
      * @return Methods that are referenced but have not been visited, and the methods
-     * where they was referenced.
+     * where they was referenced. A method is visited if its class or any of its superclasses
+     * or interfaces declares it.
      * Methods whose package starts with an entry in {@code ignoredPackages} are removed.
      * Missing methods referenced in an entry in {@code ignoreReferencesInPackages} are removed.
      */
     public Map<String, Set<String>> getMethodsMissing() {
-        Map<String, Set<String>> missingMethods = new HashMap<>(methodsReferenced);
-        Set<String> methods = missingMethods.keySet();
-        methods.removeAll(methodsVisited);
+        return new SymbolMap(symbols, findMethodsMissing());
+    }
 
-        Set<String> ignoredPackages = getIgnoredPackages(methods);
-        methods.removeAll(ignoredPackages);
+    IntObjectMap<IntSet> findMethodsMissing() {
+        return findMissingLinks().methods;
+    }
 
-        if(!ignoreReferencesInPackages.isEmpty()){
-            missingMethods = removeMissingReferencesInIgnoredPackages(missingMethods);
+    private synchronized MissingLinks findMissingLinks() {
+        if (missingLinks == null && spilledClassReferences != null) {
+            missingLinks = findSpilledMissingLinks();
+        }
+        if (missingLinks == null) {
+            int[] classes = classesReferenced.keys();
+            int[] methods = methodsReferenced.keys();
+            missingLinks = ForkJoinPool.commonPool().invoke(new MissingLinksTask(classes, methods, 0, classes.length + methods.length));
+        }
+        return missingLinks;
+    }
 
+    /**
+     * Finds the missing links by merging the spilled references, one class or method at a time,
+     * and deletes the spilled references.
+     */
+    private MissingLinks findSpilledMissingLinks() {
+        MissingLinks missing = new MissingLinks();
+        try (SpilledReferences classes = spilledClassReferences; SpilledReferences methods = spilledMethodReferences) {
+            classes.forEachReferenced((classname, referencedFrom) -> {
+                if (!isClassFound(classname)) {
+                    addIfReferenced(classname, referencedFrom, missing.classes);
+                }
+            });
+            methods.forEachReferenced((method, referencedFrom) -> {
+                if (!isMethodFound(method)) {
+                    addIfReferenced(method, referencedFrom, missing.methods);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled references", e);
         }
-        return missingMethods;
+        return missing;
     }
 
+    private boolean isClassFound(int classname) {
+        return classesVisited.contains(classname)
+                || ignoreAnnotationReferences && annotationsReferenced.contains(classname)
+                || isInIgnoredPackage(classname);
+    }
 
-    private Map<String, Set<String>> removeMissingReferencesInIgnoredPackages(Map<String, Set<String>> missingClasses) {
-        return missingClasses
-                .entrySet()
-                .stream()
-                .map(e -> new Reference(e.getKey(), getNonIgnoredReferenced(e.getValue())))
-                .filter(Reference::isNotEmpty)
-                .collect(Collectors.toMap(Reference::getReference, Reference::getReferencedFrom));
+    private boolean isMethodFound(int method) {
+        return methodsVisited.contains(method) || isInIgnoredPackage(method) || hierarchy.isResolvable(method);
     }
 
-    private Set<String> getIgnoredPackages(Set<String> missingClasses) {
-        return missingClasses.stream().filter(s -> {
-            for (String ignorePackage : ignorePackages) {
-                if (s.startsWith(ignorePackage)) {
-                    return true;
-                }
-            }
-            return false;
-        }).collect(Collectors.toSet());
+    private void addIfReferenced(int classOrMethod, IntSet referencedFrom, IntObjectMap<IntSet> missing) {
+        IntSet nonIgnoredReferences = getNonIgnoredReferenced(referencedFrom);
+        if (!nonIgnoredReferences.isEmpty()) {
+            missing.put(classOrMethod, nonIgnoredReferences);
+        }
     }
 
-    private Set<String> getNonIgnoredReferenced(Set<String> references) {
-        return references.stream().filter(s -> {
-            for (String ignorePackage : ignoreReferencesInPackages) {
-                if (s.startsWith(ignorePackage)) {
-                    return false;
-                }
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return all methods referenced, and the methods that referenced them.
+     */
+    IntObjectMap<IntSet> getMethodReferences() {
+        return methodsReferenced;
+    }
+
+    /**
+     * @return all classes referenced, and the classes or methods that referenced them.
+     */
+    IntObjectMap<IntSet> getClassReferences() {
+        return classesReferenced;
+    }
+
+    IntSet getVisitedClasses() {
+        return classesVisited;
+    }
+
+    IntSet getVisitedMethods() {
+        return methodsVisited;
+    }
+
+    IntSet getAnnotations() {
+        return annotationsReferenced;
+    }
+
+    /**
+     * @return the direct superclass and interfaces of each visited class.
+     */
+    IntObjectMap<IntSet> getSupertypes() {
+        return supertypesByClass;
+    }
+
+    private boolean isInIgnoredPackage(int classOrMethod) {
+        return !ignorePackages.isEmpty() && ignorePackages.matches(symbols.name(symbols.classOf(classOrMethod)));
+    }
+
+    private IntSet getNonIgnoredReferenced(IntSet references) {
+        if (ignoreReferencesInPackages.isEmpty()) {
+            return references;
+        }
+        IntSet nonIgnored = new IntSet();
+        references.forEach(reference -> {
+            if (!ignoreReferencesInPackages.matches(symbols.name(symbols.classOf(reference)))) {
+                nonIgnored.add(reference);
             }
-            return true;
-        }).collect(Collectors.toSet());
+        });
+        return nonIgnored;
+    }
 
+    private static class MissingLinks {
+        final IntObjectMap<IntSet> classes = new IntObjectMap<>();
+        final IntObjectMap<IntSet> methods = new IntObjectMap<>();
+
+        MissingLinks merge(MissingLinks other) {
+            other.classes.forEach((references, missing) -> classes.put(missing, references));
+            other.methods.forEach((references, missing) -> methods.put(missing, references));
+            return this;
+        }
     }
 
-    private static class Reference {
-        public final String reference;
-        public final Set<String> referencedFrom;
+    /**
+     * Checks a range of the referenced classes, followed by the referenced methods, and splits the range
+     * in two until it is small enough. Every check of a class or method is done in the same place, so
+     * the visited sets, the ignore rules and the class hierarchy are only looked at once for each of them.
+     */
+    private class MissingLinksTask extends RecursiveTask<MissingLinks> {
+        private static final int THRESHOLD = 2048;
+
+        private final int[] classes;
+        private final int[] methods;
+        private final int from;
+        private final int to;
 
-        private Reference(String reference, Set<String> referencedFrom) {
-            this.reference = reference;
-            this.referencedFrom = referencedFrom;
+        MissingLinksTask(int[] classes, int[] methods, int from, int to) {
+            this.classes = classes;
+            this.methods = methods;
+            this.from = from;
+            this.to = to;
         }
 
-        public String getReference() {
-            return reference;
+        @Override
+        protected MissingLinks compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                MissingLinksTask first = new MissingLinksTask(classes, methods, from, middle);
+                first.fork();
+                MissingLinks second = new MissingLinksTask(classes, methods, middle, to).compute();
+                return first.join().merge(second);
+            }
+            MissingLinks missing = new MissingLinks();
+            for (int i = from; i < to; i++) {
+                if (i < classes.length) {
+                    checkClass(classes[i], missing.classes);
+                } else {
+                    checkMethod(methods[i - classes.length], missing.methods);
+                }
+            }
+            return missing;
         }
 
-        public Set<String> getReferencedFrom() {
-            return referencedFrom;
+        private void checkClass(int classname, IntObjectMap<IntSet> missing) {
+            if (!isClassFound(classname)) {
+                addIfReferenced(classname, classesReferenced.get(classname), missing);
+            }
         }
 
-        public boolean isNotEmpty(){
-            return !referencedFrom.isEmpty();
+        private void checkMethod(int method, IntObjectMap<IntSet> missing) {
+            if (!isMethodFound(method)) {
+                addIfReferenced(method, methodsReferenced.get(method), missing);
+            }
         }
     }
 }
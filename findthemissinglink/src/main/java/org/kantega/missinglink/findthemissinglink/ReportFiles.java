@@ -0,0 +1,176 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the files of a report to a directory: the summary in missing-links-report.txt, the missing classes and
+ * methods as JSON, the metrics, and on request everything seen and visited and a snapshot.
+ * Used by the Maven plugin and the command line, so both write the same files.
+ */
+public class ReportFiles {
+    public static final String MISSING_LINKS_REPORT = "missing-links-report.txt";
+    public static final String MISSING_CLASS_REFERENCES = "missing-classes.json";
+    public static final String MISSING_METHOD_REFERENCES = "missing-methods.json";
+
+    public static final String METHOD_REFERENCED = "methods-referenced.json";
+    public static final String CLASSES_REFERENCED = "classes-referenced.json";
+    public static final String METHOD_VISITED = "methods-visited.txt";
+    public static final String CLASSES_VISITED = "classes-visited.txt";
+    public static final String METHOD_CALL_TREE = "call-paths.txt";
+    public static final String REPORT_SNAPSHOT = "report.snapshot";
+    public static final String METRICS = "metrics.json";
+
+    private final Path directory;
+    private final ReportWriter reportWriter;
+    private String title = "Find the missing links report";
+    private boolean writeSeenAndVisited;
+    private boolean writeSnapshot;
+    private int callPathMaxDepth = 20;
+    private int callPathsPerMethod = 10;
+
+    /**
+     * @param compress if true, the JSON and text files are gzip compressed, except missing-links-report.txt.
+     */
+    public ReportFiles(Path directory, boolean compress) {
+        this.directory = directory;
+        this.reportWriter = new ReportWriter(directory, compress);
+    }
+
+    /**
+     * @param title the first line of missing-links-report.txt.
+     */
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * @param writeSeenAndVisited if true, all classes and methods visited and referenced, and the call paths to the
+     *                            missing methods, are written too.
+     */
+    public void setWriteSeenAndVisited(boolean writeSeenAndVisited) {
+        this.writeSeenAndVisited = writeSeenAndVisited;
+    }
+
+    /**
+     * @param writeSnapshot if true, the whole report is written to report.snapshot.
+     */
+    public void setWriteSnapshot(boolean writeSnapshot) {
+        this.writeSnapshot = writeSnapshot;
+    }
+
+    /**
+     * @param callPathMaxDepth the largest number of callers in a path written to call-paths.txt.
+     */
+    public void setCallPathMaxDepth(int callPathMaxDepth) {
+        this.callPathMaxDepth = callPathMaxDepth;
+    }
+
+    /**
+     * @param callPathsPerMethod the largest number of paths written to call-paths.txt for each missing method.
+     */
+    public void setCallPathsPerMethod(int callPathsPerMethod) {
+        this.callPathsPerMethod = callPathsPerMethod;
+    }
+
+    /**
+     * @return the directory the files are written to.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes the files of {@code report}, with the missing classes and methods already found in it.
+     */
+    public void write(Report report, Map<String, Set<String>> classesMissing, Map<String, Set<String>> methodsMissing, List<String> ignoredPackages) throws IOException {
+        Files.createDirectories(directory);
+        try(BufferedWriter writer = Files.newBufferedWriter(directory.resolve(MISSING_LINKS_REPORT), StandardCharsets.UTF_8)){
+            writer.write(title);
+            writer.newLine();
+            writer.newLine();
+
+            writer.write("Scan profile: " + report.getScanProfile());
+            writer.newLine();
+            writer.newLine();
+
+            writer.write("Packages ignored:");
+            writer.newLine();
+            for (String ignoredPackage : sorted(ignoredPackages)) {
+                writer.write("   " + ignoredPackage);
+                writer.newLine();
+            }
+            writer.newLine();
+            if(!classesMissing.isEmpty()){
+                writer.write("Classes missing (see also " + reportWriter.resolve(MISSING_CLASS_REFERENCES).getFileName() + "):");
+                writer.newLine();
+
+                for (String missingClass : sorted(classesMissing.keySet())) {
+                    writer.write("   " + missingClass);
+                    writer.newLine();
+                }
+            } else {
+                writer.write("No classes missing");
+            }
+
+            writer.newLine();
+            if(!methodsMissing.isEmpty()){
+                writer.write("Methods missing (see also " + reportWriter.resolve(MISSING_METHOD_REFERENCES).getFileName() + "):");
+                writer.newLine();
+
+                for (String missingMethod : sorted(methodsMissing.keySet())) {
+                    writer.write("   " + missingMethod);
+                    writer.newLine();
+                }
+            } else if (report.getScanProfile() == ScanProfile.CLASSES) {
+                writer.write("Methods not checked with the CLASSES scan profile");
+            } else {
+                writer.write("No methods missing");
+            }
+        }
+        reportWriter.writeJson(MISSING_CLASS_REFERENCES, classesMissing);
+        reportWriter.writeJson(MISSING_METHOD_REFERENCES, methodsMissing);
+
+        if(writeSeenAndVisited){
+            reportWriter.writeJson(CLASSES_REFERENCED, report.getClassesReferenced());
+            reportWriter.writeJson(METHOD_REFERENCED, report.getMethodsReferenced());
+            CallPathEngine callPaths = new CallPathEngine(report);
+            callPaths.setMaxDepth(callPathMaxDepth);
+            callPaths.setMaxPathsPerMethod(callPathsPerMethod);
+            try (Writer writer = reportWriter.newWriter(METHOD_CALL_TREE)) {
+                callPaths.writeCallPaths(methodsMissing.keySet(), writer);
+            }
+            reportWriter.writeLines(CLASSES_VISITED, report.getClassesVisited());
+            reportWriter.writeLines(METHOD_VISITED, report.getMethodsVisited());
+        }
+        if(writeSnapshot){
+            ReportSnapshot.write(report, directory.resolve(REPORT_SNAPSHOT));
+        }
+    }
+
+    /**
+     * Writes {@code metrics} to metrics.json, which is never compressed.
+     */
+    public void writeMetrics(ScanMetrics metrics) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(METRICS), StandardCharsets.UTF_8)) {
+            metrics.writeJson(writer);
+        }
+    }
+
+    private static List<String> sorted(Collection<String> strings) {
+        List<String> sorted = new ArrayList<>(strings);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,367 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A report written to a compact binary file, that can be memory-mapped and queried without scanning
+ * the classpath again.
+ * <p>
+ * Every class and method in the report is a string in a table sorted by name, and is identified by its index
+ * in the table. The file holds, in order:
+ * <ul>
+ *     <li>a header: magic, format version, scan profile and the number of strings</li>
+ *     <li>the string table: the offset of each string, followed by the strings in UTF-8</li>
+ *     <li>one byte of flags for each string: visited class, visited method, annotation and missing</li>
+ *     <li>what references each string: the offset of each string's list, followed by the lists of indexes</li>
+ *     <li>the direct supertypes of each class, in the same layout</li>
+ * </ul>
+ * Lists are sorted, so a string is found by binary search, and its references are read from their offset
+ * without reading anything else. Sections are aligned to four bytes.
+ */
+public final class ReportSnapshot {
+    private static final int MAGIC = 0x4d4c534e;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte VISITED_CLASS = 1;
+    private static final byte VISITED_METHOD = 2;
+    private static final byte ANNOTATION = 4;
+    private static final byte MISSING = 8;
+
+    private final ByteBuffer buffer;
+    private final ScanProfile scanProfile;
+    private final int count;
+    private final int stringOffsets;
+    private final int strings;
+    private final int flags;
+    private final int referencedBy;
+    private final int supertypes;
+
+    private ReportSnapshot(ByteBuffer buffer, Path path) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a report snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(path + " has unsupported format version " + buffer.getInt(4));
+        }
+        this.scanProfile = ScanProfile.values()[buffer.getInt(8)];
+        this.count = buffer.getInt(12);
+        this.stringOffsets = HEADER_SIZE;
+        this.strings = stringOffsets + 4 * (count + 1);
+        this.flags = align(strings + buffer.getInt(stringOffsets + 4 * count));
+        this.referencedBy = align(flags + count);
+        this.supertypes = referencedBy + 4 * (count + 1) + 4 * buffer.getInt(referencedBy + 4 * count);
+    }
+
+    /**
+     * Writes {@code report} to {@code path}, replacing it if it exists.
+     */
+    public static void write(Report report, Path path) throws IOException {
+        SymbolTable symbols = report.getSymbols();
+        IntObjectMap<IntSet> classesMissing = report.findClassesMissing();
+        IntObjectMap<IntSet> methodsMissing = report.findMethodsMissing();
+        IntSet ids = new IntSet();
+        ids.addAll(report.getVisitedClasses());
+        ids.addAll(report.getVisitedMethods());
+        ids.addAll(report.getAnnotations());
+        addKeysAndValues(ids, report.getClassReferences());
+        addKeysAndValues(ids, report.getMethodReferences());
+        addKeysAndValues(ids, report.getSupertypes());
+        // When references are spilled, the missing links are the only references the report still has.
+        addKeysAndValues(ids, classesMissing);
+        addKeysAndValues(ids, methodsMissing);
+
+        int[] sorted = ids.toArray();
+        String[] names = new String[symbols.size() + 1];
+        for (int id : sorted) {
+            names[id] = symbols.name(id);
+        }
+        sorted = Arrays.stream(sorted).boxed()
+                .sorted(Comparator.comparing(id -> names[id]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < sorted.length; i++) {
+            indexes[sorted[i]] = i;
+        }
+
+        byte[] flags = new byte[sorted.length];
+        setFlag(flags, indexes, report.getVisitedClasses(), VISITED_CLASS);
+        setFlag(flags, indexes, report.getVisitedMethods(), VISITED_METHOD);
+        setFlag(flags, indexes, report.getAnnotations(), ANNOTATION);
+        classesMissing.forEach((references, id) -> flags[indexes[id]] |= MISSING);
+        methodsMissing.forEach((references, id) -> flags[indexes[id]] |= MISSING);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(report.getScanProfile().ordinal());
+            out.writeInt(sorted.length);
+
+            byte[][] encoded = new byte[sorted.length][];
+            int offset = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                encoded[i] = names[sorted[i]].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(offset);
+                offset += encoded[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] string : encoded) {
+                out.write(string);
+            }
+            pad(out, offset);
+
+            out.write(flags);
+            pad(out, flags.length);
+
+            writeAdjacency(out, sorted, indexes, id -> {
+                IntSet references = report.getClassReferences().get(id);
+                if (references == null) {
+                    references = report.getMethodReferences().get(id);
+                }
+                if (references == null) {
+                    references = classesMissing.get(id);
+                }
+                return references != null ? references : methodsMissing.get(id);
+            });
+            writeAdjacency(out, sorted, indexes, report.getSupertypes()::get);
+        }
+    }
+
+    /**
+     * @return the snapshot written to {@code path}, mapped into memory.
+     */
+    public static ReportSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > ZipArchiveReader.MAX_MAPPED_SIZE) {
+                throw new IOException(path + " is too large to be mapped into memory");
+            }
+            return new ReportSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path);
+        }
+    }
+
+    public ScanProfile getScanProfile() {
+        return scanProfile;
+    }
+
+    /**
+     * @return the number of classes and methods in the snapshot.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return true if {@code classOrMethod} was visited, or referenced, when the classpath was scanned.
+     */
+    public boolean contains(String classOrMethod) {
+        return find(classOrMethod) >= 0;
+    }
+
+    /**
+     * @return true if {@code classOrMethod} was visited when the classpath was scanned.
+     * Methods are only visited in the class declaring them.
+     */
+    public boolean isVisited(String classOrMethod) {
+        int index = find(classOrMethod);
+        return index >= 0 && (flags(index) & (VISITED_CLASS | VISITED_METHOD)) != 0;
+    }
+
+    /**
+     * @return true if {@code classOrMethod} was reported missing.
+     */
+    public boolean isMissing(String classOrMethod) {
+        int index = find(classOrMethod);
+        return index >= 0 && (flags(index) & MISSING) != 0;
+    }
+
+    /**
+     * @return the classes and methods referencing {@code classOrMethod}, sorted by name.
+     */
+    public List<String> getReferencedBy(String classOrMethod) {
+        return names(referencedBy, find(classOrMethod));
+    }
+
+    /**
+     * @return the direct superclass and interfaces of {@code className}, sorted by name.
+     */
+    public List<String> getSupertypes(String className) {
+        return names(supertypes, find(className));
+    }
+
+    /**
+     * @return why {@code classOrMethod} is, or is not, missing, one reason per line,
+     * followed by what references it.
+     */
+    public List<String> explainMissing(String classOrMethod) {
+        List<String> lines = new ArrayList<>();
+        int index = find(classOrMethod);
+        if (index < 0) {
+            lines.add(classOrMethod + " is not referenced by any class scanned");
+            return lines;
+        }
+        int flags = flags(index);
+        if ((flags & (VISITED_CLASS | VISITED_METHOD)) != 0) {
+            lines.add(classOrMethod + " is not missing, it was visited");
+            return lines;
+        }
+
+        int dot = classOrMethod.indexOf('.');
+        if (dot < 0) {
+            lines.add(classOrMethod + " was not found on the classpath");
+        } else {
+            explainMissingMethod(classOrMethod.substring(0, dot), classOrMethod.substring(dot + 1), lines);
+        }
+        if ((flags & MISSING) == 0) {
+            if ((flags & ANNOTATION) != 0) {
+                lines.add("It is an annotation, and annotations may be ignored");
+            }
+            lines.add("It is not reported missing, it is ignored by the configuration or declared by a supertype");
+        }
+        List<String> references = getReferencedBy(classOrMethod);
+        lines.add("Referenced by " + references.size() + ":");
+        for (String reference : references) {
+            lines.add("   " + reference);
+        }
+        return lines;
+    }
+
+    private void explainMissingMethod(String owner, String member, List<String> lines) {
+        int ownerIndex = find(owner);
+        if (ownerIndex < 0 || (flags(ownerIndex) & VISITED_CLASS) == 0) {
+            lines.add("Its class " + owner + " was not found on the classpath");
+            return;
+        }
+        List<String> searched = new ArrayList<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(owner);
+        while (!pending.isEmpty()) {
+            String type = pending.poll();
+            if (searched.contains(type)) {
+                continue;
+            }
+            searched.add(type);
+            if (!type.equals(owner) && isVisited(type + "." + member)) {
+                lines.add(member + " is declared by the supertype " + type);
+                return;
+            }
+            pending.addAll(getSupertypes(type));
+        }
+        lines.add("Neither " + owner + " nor its supertypes declare " + member);
+        for (String type : searched.subList(1, searched.size())) {
+            lines.add("   " + type + (isVisited(type) ? "" : " (not found on the classpath)"));
+        }
+    }
+
+    /**
+     * @return the index of {@code name} in the string table, or -1 if it is not there.
+     */
+    private int find(String name) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = string(middle).compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private String string(int index) {
+        int start = buffer.getInt(stringOffsets + 4 * index);
+        int end = buffer.getInt(stringOffsets + 4 * (index + 1));
+        byte[] bytes = new byte[end - start];
+        ByteBuffer string = buffer.duplicate();
+        // Cast to Buffer, since ByteBuffer.position(int) does not exist on Java 8.
+        ((Buffer) string).position(strings + start);
+        string.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte flags(int index) {
+        return buffer.get(flags + index);
+    }
+
+    private List<String> names(int adjacency, int index) {
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        int start = buffer.getInt(adjacency + 4 * index);
+        int end = buffer.getInt(adjacency + 4 * (index + 1));
+        int lists = adjacency + 4 * (count + 1);
+        List<String> names = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            names.add(string(buffer.getInt(lists + 4 * i)));
+        }
+        return names;
+    }
+
+    private static void addKeysAndValues(IntSet ids, IntObjectMap<IntSet> map) {
+        map.forEach((values, key) -> {
+            ids.add(key);
+            ids.addAll(values);
+        });
+    }
+
+    private static void setFlag(byte[] flags, int[] indexes, IntSet ids, byte flag) {
+        ids.forEach(id -> flags[indexes[id]] |= flag);
+    }
+
+    /**
+     * Writes the offset of each string's list, then the lists, with each list sorted by name.
+     */
+    private static void writeAdjacency(DataOutputStream out, int[] sorted, int[] indexes, Adjacency adjacency) throws IOException {
+        int[][] lists = new int[sorted.length][];
+        int offset = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            IntSet values = adjacency.get(sorted[i]);
+            lists[i] = values == null ? new int[0] : Arrays.stream(values.toArray()).map(id -> indexes[id]).sorted().toArray();
+            out.writeInt(offset);
+            offset += lists[i].length;
+        }
+        out.writeInt(offset);
+        for (int[] list : lists) {
+            for (int index : list) {
+                out.writeInt(index);
+            }
+        }
+    }
+
+    private static void pad(DataOutputStream out, int length) throws IOException {
+        for (int i = length; i < align(length); i++) {
+            out.write(0);
+        }
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    private interface Adjacency {
+        IntSet get(int id);
+    }
+}
@@ -0,0 +1,128 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes report files to a directory.
+ * Maps and lists are written in sorted order, one entry at a time, so reports from consecutive builds
+ * can be compared line by line. The maps and sets of a {@link Report} are sorted as symbol ids, without copying
+ * them into lists of strings. Files may be gzip compressed, in which case «.gz» is added to their names.
+ */
+public class ReportWriter {
+    private final Path directory;
+    private final boolean compress;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public ReportWriter(Path directory, boolean compress) {
+        this.directory = directory;
+        this.compress = compress;
+    }
+
+    /**
+     * @return the file that is written for {@code fileName}.
+     */
+    public Path resolve(String fileName) {
+        return directory.resolve(compress ? fileName + ".gz" : fileName);
+    }
+
+    /**
+     * Writes {@code references} as a JSON object with the keys in sorted order,
+     * each with a sorted array of the classes or methods referencing it.
+     */
+    public void writeJson(String fileName, Map<String, Set<String>> references) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(newOutputStream(fileName), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            if (references instanceof SymbolMap) {
+                writeSymbols(generator, (SymbolMap) references);
+            } else {
+                for (String key : sorted(references.keySet())) {
+                    generator.writeArrayFieldStart(key);
+                    for (String reference : sorted(references.get(key))) {
+                        generator.writeString(reference);
+                    }
+                    generator.writeEndArray();
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes {@code lines} in sorted order, one per line.
+     */
+    public void writeLines(String fileName, Collection<String> lines) throws IOException {
+        try (Writer writer = newWriter(fileName)) {
+            if (lines instanceof SymbolSet) {
+                SymbolTable symbols = ((SymbolSet) lines).getSymbols();
+                for (int id : new SymbolOrder(symbols, ((SymbolSet) lines).getIds()).sorted()) {
+                    writer.write(symbols.name(id));
+                    writer.write('\n');
+                }
+            } else {
+                for (String line : sorted(lines)) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a buffered UTF-8 writer of {@code fileName}, compressed if this writer compresses.
+     */
+    public Writer newWriter(String fileName) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(newOutputStream(fileName), StandardCharsets.UTF_8));
+    }
+
+    private static void writeSymbols(JsonGenerator generator, SymbolMap references) throws IOException {
+        SymbolTable symbols = references.getSymbols();
+        IntObjectMap<IntSet> ids = references.getReferences();
+        IntSet keys = new IntSet();
+        IntSet all = new IntSet();
+        ids.forEach((values, key) -> {
+            keys.add(key);
+            all.add(key);
+            all.addAll(values);
+        });
+        SymbolOrder order = new SymbolOrder(symbols, all);
+        for (int key : order.sorted(keys)) {
+            generator.writeArrayFieldStart(symbols.name(key));
+            for (int reference : order.sorted(ids.get(key))) {
+                generator.writeString(symbols.name(reference));
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private OutputStream newOutputStream(String fileName) throws IOException {
+        Files.createDirectories(directory);
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(resolve(fileName)), 64 * 1024);
+        return compress ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    private static List<String> sorted(Collection<String> strings) {
+        List<String> sorted = new ArrayList<>(strings);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,44 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ignore configuration, applied while classes are scanned.
+ * References made by classes in {@code ignoreReferencesInPackages} are not recorded, and neither are
+ * references to classes in {@code ignorePackages}. What a class declares is always recorded, since
+ * it is needed to resolve inherited methods.
+ */
+final class ScanFilter {
+    static final ScanFilter NONE = new ScanFilter(Collections.<String>emptyList(), Collections.<String>emptyList());
+
+    private final PackagePrefixes ignorePackages;
+    private final PackagePrefixes ignoreReferencesInPackages;
+
+    ScanFilter(List<String> ignorePackages, List<String> ignoreReferencesInPackages) {
+        this.ignorePackages = new PackagePrefixes(ignorePackages);
+        this.ignoreReferencesInPackages = new PackagePrefixes(ignoreReferencesInPackages);
+    }
+
+    /**
+     * @return false if the classes and methods referenced by {@code className} should not be recorded.
+     */
+    boolean recordsReferencesFrom(String className) {
+        return !ignoreReferencesInPackages.matches(className);
+    }
+
+    /**
+     * @return false if references to {@code className}, or to its methods, should not be recorded.
+     */
+    boolean recordsReferencesTo(String className) {
+        return !ignorePackages.matches(className);
+    }
+
+    /**
+     * @return a string that is equal for filters that record the same references,
+     * used to tell apart cached indexes made with different filters.
+     */
+    String fingerprint() {
+        return "ignorePackages=" + ignorePackages + ";ignoreReferencesInPackages=" + ignoreReferencesInPackages;
+    }
+}
@@ -0,0 +1,206 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * How long each phase of an analysis took, and what was found in each artifact scanned.
+ * Artifacts may be recorded from several threads at once.
+ */
+public class ScanMetrics {
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<ArtifactMetrics> artifacts = new ArrayList<>();
+
+    /**
+     * Records that {@code phase} took {@code nanos}. A phase recorded again is added to the time already recorded.
+     */
+    public synchronized void recordPhase(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    void recordArtifact(String path, String source, long nanos, ScanResult result) {
+        ArtifactMetrics metrics = new ArtifactMetrics(path, source, nanos, result);
+        synchronized (this) {
+            artifacts.add(metrics);
+        }
+    }
+
+    /**
+     * @return the time of each phase in milliseconds, in the order the phases were first recorded.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        phaseNanos.forEach((phase, nanos) -> phases.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return phases;
+    }
+
+    /**
+     * @return the artifacts scanned, slowest first.
+     */
+    public synchronized List<ArtifactMetrics> getArtifacts() {
+        return artifacts.stream()
+                .sorted(Comparator.comparingLong((ArtifactMetrics artifact) -> artifact.nanos).reversed()
+                        .thenComparing(ArtifactMetrics::getPath))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return a few lines for the build log: the time of each phase, the totals of the artifacts,
+     * and the {@code slowest} slowest artifacts.
+     */
+    public List<String> getSummary(int slowest) {
+        List<String> lines = new ArrayList<>();
+        getPhases().forEach((phase, millis) -> lines.add(String.format("%-14s %6d ms", phase, millis)));
+        List<ArtifactMetrics> artifacts = getArtifacts();
+        long classes = artifacts.stream().mapToLong(ArtifactMetrics::getClassesParsed).sum();
+        long bytes = artifacts.stream().mapToLong(ArtifactMetrics::getBytesParsed).sum();
+        long cached = artifacts.stream().filter(artifact -> artifact.getSource().equals(ArtifactMetrics.CACHE)).count();
+        long shared = artifacts.stream().filter(artifact -> artifact.getSource().equals(ArtifactMetrics.SESSION)).count();
+        lines.add(String.format("%d artifacts, %d read from the index cache, %d indexed earlier in the build, %d classes (%d KB) parsed",
+                artifacts.size(), cached, shared, classes, bytes / 1024));
+        for (ArtifactMetrics artifact : artifacts.subList(0, Math.min(slowest, artifacts.size()))) {
+            lines.add(String.format("   %6d ms %6d classes  %s", artifact.getMillis(), artifact.getClassesParsed(), artifact.getPath()));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the phases and artifacts as a JSON object, with the artifacts sorted slowest first.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(writer)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("phaseMillis");
+            for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+                generator.writeNumberField(phase.getKey(), phase.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("artifacts");
+            for (ArtifactMetrics artifact : getArtifacts()) {
+                generator.writeStartObject();
+                generator.writeStringField("path", artifact.getPath());
+                generator.writeStringField("source", artifact.getSource());
+                generator.writeNumberField("millis", artifact.getMillis());
+                generator.writeNumberField("classesParsed", artifact.getClassesParsed());
+                generator.writeNumberField("bytesParsed", artifact.getBytesParsed());
+                generator.writeNumberField("classesVisited", artifact.getClassesVisited());
+                generator.writeNumberField("methodsVisited", artifact.getMethodsVisited());
+                generator.writeNumberField("classesReferenced", artifact.getClassesReferenced());
+                generator.writeNumberField("methodsReferenced", artifact.getMethodsReferenced());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * What was found in one artifact, and how long it took to get it.
+     */
+    public static final class ArtifactMetrics {
+        /**
+         * The artifact was scanned.
+         */
+        public static final String SCANNED = "scanned";
+
+        /**
+         * The artifact was read from the index cache.
+         */
+        public static final String CACHE = "cache";
+
+        /**
+         * The artifact was indexed earlier in the same build, by another visitor sharing the session index.
+         */
+        public static final String SESSION = "session";
+
+        /**
+         * Only the classes of the artifact reachable from the roots were parsed, in reachability mode.
+         */
+        public static final String REACHABLE = "reachable";
+
+        /**
+         * The artifact is a directory, where only changed class files are parsed.
+         */
+        public static final String DIRECTORY = "directory";
+
+        private final String path;
+        private final String source;
+        private final long nanos;
+        private final int classesParsed;
+        private final long bytesParsed;
+        private final int classesVisited;
+        private final int methodsVisited;
+        private final int classesReferenced;
+        private final int methodsReferenced;
+
+        ArtifactMetrics(String path, String source, long nanos, ScanResult result) {
+            this.path = path;
+            this.source = source;
+            this.nanos = nanos;
+            // A result from the session index was parsed by another visitor.
+            boolean parsedHere = !source.equals(SESSION);
+            this.classesParsed = parsedHere ? result.classesParsed : 0;
+            this.bytesParsed = parsedHere ? result.bytesParsed : 0;
+            this.classesVisited = result.classesVisited.size();
+            this.methodsVisited = result.methodsVisited.size();
+            this.classesReferenced = result.classesReferenced.size();
+            this.methodsReferenced = result.methodsReferenced.size();
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return {@link #SCANNED}, {@link #CACHE}, {@link #SESSION}, {@link #REACHABLE} or {@link #DIRECTORY}.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public int getClassesParsed() {
+            return classesParsed;
+        }
+
+        public long getBytesParsed() {
+            return bytesParsed;
+        }
+
+        public int getClassesVisited() {
+            return classesVisited;
+        }
+
+        public int getMethodsVisited() {
+            return methodsVisited;
+        }
+
+        /**
+         * @return the number of different classes referenced.
+         */
+        public int getClassesReferenced() {
+            return classesReferenced;
+        }
+
+        /**
+         * @return the number of different methods referenced.
+         */
+        public int getMethodsReferenced() {
+            return methodsReferenced;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * How much of each class file is parsed when the references it makes are recorded.
+ */
+public enum ScanProfile {
+    /**
+     * Skips debug information and stack map frames, so only references made by the bytecode itself are recorded.
+     * Local variable types, which are only known if a class was compiled with debug information, are not.
+     */
+    FAST(ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES),
+
+    /**
+     * Parses everything, including local variable types from the debug information.
+     */
+    THOROUGH(0),
+
+    /**
+     * Only checks that the classes referenced exist, methods are not checked. The classes referenced by the bytecode
+     * are read from the constant pool, without parsing the code, and the platform classes and the classes whose
+     * references are ignored are only listed by the names of their class files.
+     */
+    CLASSES(ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+    private final int parsingOptions;
+
+    ScanProfile(int parsingOptions) {
+        this.parsingOptions = parsingOptions;
+    }
+
+    /**
+     * @return the options given to {@link ClassReader#accept(org.objectweb.asm.ClassVisitor, int)}.
+     */
+    int getParsingOptions() {
+        return parsingOptions;
+    }
+}
@@ -0,0 +1,172 @@
+package org.kantega.missinglink.findthemissinglink;
+
+/**
+ * Classes, methods and references found when scanning a part of the classpath,
+ * typically a single archive.
+ * Everything is stored as ids of a {@link SymbolTable} in primitive collections, and only results with the same
+ * table can be combined. A scan result is only written to by one thread at a time. Results from several
+ * archives are combined with {@link #addAll(ScanResult)}.
+ * When references are spilled, a result only keeps what is declared, and its references are buffered by a
+ * {@link ReferenceSpill} until it is {@linkplain #closeReferences() closed}.
+ */
+public class ScanResult {
+    final SymbolTable symbols;
+
+    private final int annotation;
+
+    /**
+     * Where the references found are buffered instead of being kept in this result, or null if they are kept.
+     */
+    private final ReferenceSpill.Buffer spilled;
+
+    /**
+     * All classes visited, including classes only listed by the name of their class file when nothing else
+     * about them is needed.
+     */
+    final IntSet classesVisited = new IntSet();
+
+    /**
+     * All methods visited.
+     */
+    final IntSet methodsVisited = new IntSet();
+
+    /**
+     * All annotations referenced.
+     */
+    final IntSet annotationReferenced = new IntSet();
+
+    /**
+     * Map with all classes referenced, and the classes or methods that referenced them.
+     */
+    final IntObjectMap<IntSet> classesReferenced = new IntObjectMap<>();
+
+    /**
+     * Map with all methods referenced, and the methods that referenced them.
+     */
+    final IntObjectMap<IntSet> methodsReferenced = new IntObjectMap<>();
+
+    /**
+     * Members mapped by their class.
+     */
+    final IntObjectMap<IntSet> methodsByClass = new IntObjectMap<>();
+
+    /**
+     * Map with class as key, and its direct superclass and interfaces.
+     */
+    final IntObjectMap<IntSet> supertypesByClass = new IntObjectMap<>();
+
+    /**
+     * Number of class files parsed into this result, and their size in bytes.
+     * Not kept in the index cache, so a result read from the cache has parsed nothing.
+     */
+    int classesParsed;
+    long bytesParsed;
+
+    /**
+     * A result with a symbol table of its own.
+     */
+    public ScanResult() {
+        this(new SymbolTable());
+    }
+
+    public ScanResult(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    /**
+     * @param spill where the references found are spilled, or null to keep them in this result.
+     */
+    ScanResult(SymbolTable symbols, ReferenceSpill spill) {
+        this.symbols = symbols;
+        this.annotation = symbols.intern("java/lang/annotation/Annotation");
+        this.spilled = spill == null ? null : spill.newBuffer();
+    }
+
+    void addReferencedClass(int classname, int referencedFrom) {
+        if (spilled != null) {
+            spilled.addClass(classname, referencedFrom);
+            return;
+        }
+        classesReferenced.computeIfAbsent(classname, s -> new IntSet()).add(referencedFrom);
+    }
+
+    void addReferencedMethod(int method, int referencedFrom) {
+        if (spilled != null) {
+            spilled.addMethod(method, referencedFrom);
+            return;
+        }
+        methodsReferenced.computeIfAbsent(method, s -> new IntSet()).add(referencedFrom);
+    }
+
+    boolean spillsReferences() {
+        return spilled != null;
+    }
+
+    /**
+     * Spills the references still buffered, if references are spilled, and frees the buffer.
+     */
+    void closeReferences() {
+        if (spilled != null) {
+            spilled.close();
+        }
+    }
+
+    void addClassMethodMapping(int className, int member) {
+        methodsByClass.computeIfAbsent(className, s -> new IntSet()).add(member);
+    }
+
+    void classParsed(int length) {
+        classesParsed++;
+        bytesParsed += length;
+    }
+
+    void registerInheritance(int className, int superName) {
+        supertypesByClass.computeIfAbsent(className, s -> new IntSet()).add(superName);
+        if(superName == annotation){
+            annotationReferenced.add(className);
+        }
+    }
+
+    /**
+     * Adds everything found in {@code other} to this result. The references are spilled if this result spills them.
+     */
+    public void addAll(ScanResult other) {
+        classesVisited.addAll(other.classesVisited);
+        methodsVisited.addAll(other.methodsVisited);
+        annotationReferenced.addAll(other.annotationReferenced);
+        if (spilled != null) {
+            other.classesReferenced.forEach((values, key) -> values.forEach(value -> spilled.addClass(key, value)));
+            other.methodsReferenced.forEach((values, key) -> values.forEach(value -> spilled.addMethod(key, value)));
+        } else {
+            mergeReferences(classesReferenced, other.classesReferenced);
+            mergeReferences(methodsReferenced, other.methodsReferenced);
+        }
+        mergeReferences(methodsByClass, other.methodsByClass);
+        mergeReferences(supertypesByClass, other.supertypesByClass);
+        classesParsed += other.classesParsed;
+        bytesParsed += other.bytesParsed;
+    }
+
+    /**
+     * Adds what {@code other} declares to this result: its classes, methods, annotations and supertypes,
+     * but none of its references.
+     */
+    void addDeclarations(ScanResult other) {
+        classesVisited.addAll(other.classesVisited);
+        methodsVisited.addAll(other.methodsVisited);
+        annotationReferenced.addAll(other.annotationReferenced);
+        mergeReferences(methodsByClass, other.methodsByClass);
+        mergeReferences(supertypesByClass, other.supertypesByClass);
+    }
+
+    private static void mergeReferences(IntObjectMap<IntSet> target, IntObjectMap<IntSet> source) {
+        source.forEach((values, key) -> {
+            IntSet existing = target.get(key);
+            if (existing == null) {
+                target.put(key, new IntSet(values));
+            } else {
+                existing.addAll(values);
+            }
+        });
+    }
+}
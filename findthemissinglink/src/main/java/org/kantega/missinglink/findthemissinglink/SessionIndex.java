@@ -0,0 +1,86 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Archives indexed during one build, shared by every {@link ClassFileVisitor} given the same instance,
+ * so an archive several modules depend on is only indexed once. Visitors may use it from several threads at once.
+ * <p>
+ * An archive is indexed by the first visitor that asks for it, and the others wait for that visitor to finish.
+ * It is indexed again if it changes size or modification time, or is scanned with other options.
+ * The results are shared, and must not be written to.
+ * <p>
+ * The visitors also share the symbol table of the session, and a view of the platform classes with its ids.
+ * Both are freed with the session. The platform classes themselves are kept for the JVM with a symbol table
+ * of their own, so nothing but them is kept from one build to the next in a long-lived JVM.
+ */
+public final class SessionIndex {
+    private final ConcurrentMap<String, FutureTask<ScanResult>> archives = new ConcurrentHashMap<>();
+    private final SymbolTable symbols = new SymbolTable();
+    private PlatformView platform;
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the platform classes with the ids of the session's symbols, made by {@code lister} the first time
+     * they are needed.
+     */
+    synchronized PlatformView getPlatform(PlatformLister lister) throws IOException {
+        if (platform == null) {
+            platform = lister.list();
+        }
+        return platform;
+    }
+
+    /**
+     * @return the index of {@code archive}, made by {@code indexer} unless it has been made before with the same
+     * {@code scanOptions}.
+     */
+    ScanResult get(Path archive, String scanOptions, Supplier<ScanResult> indexer) {
+        String key;
+        try {
+            key = archive.toAbsolutePath() + ";" + Files.size(archive) + ";" + Files.getLastModifiedTime(archive).toMillis() + ";" + scanOptions;
+        } catch (IOException e) {
+            return indexer.get();
+        }
+        FutureTask<ScanResult> task = new FutureTask<>(indexer::get);
+        FutureTask<ScanResult> indexed = archives.putIfAbsent(key, task);
+        if (indexed == null) {
+            indexed = task;
+            task.run();
+        }
+        try {
+            return indexed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return indexer.get();
+        } catch (ExecutionException e) {
+            // Not kept, so the next visitor tries again.
+            archives.remove(key, indexed);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not index " + archive, e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of archives indexed.
+     */
+    public int size() {
+        return archives.size();
+    }
+
+    interface PlatformLister {
+        PlatformView list() throws IOException;
+    }
+}
@@ -0,0 +1,63 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers questions about a {@link ReportSnapshot} from the command line, without scanning the classpath again:
+ * <pre>
+ * java -cp find-the-missing-link.jar org.kantega.missinglink.findthemissinglink.SnapshotQuery report.snapshot who-references org/example/Foo
+ * </pre>
+ * Classes are written {@code org/example/Foo}, and methods {@code org/example/Foo.bar(I)V}.
+ */
+public final class SnapshotQuery {
+    private SnapshotQuery() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            usage(System.err);
+            System.exit(1);
+        }
+        ReportSnapshot snapshot = ReportSnapshot.open(Paths.get(args[0]));
+        List<String> answer = query(snapshot, args[1], args[2]);
+        if (answer == null) {
+            usage(System.err);
+            System.exit(1);
+        }
+        answer.forEach(System.out::println);
+    }
+
+    /**
+     * @return the lines answering {@code query} about {@code classOrMethod}, or null if the query is unknown.
+     */
+    static List<String> query(ReportSnapshot snapshot, String query, String classOrMethod) {
+        switch (query) {
+            case "who-references":
+                return snapshot.getReferencedBy(classOrMethod);
+            case "is-visited":
+                return Collections.singletonList(String.valueOf(snapshot.isVisited(classOrMethod)));
+            case "is-missing":
+                return Collections.singletonList(String.valueOf(snapshot.isMissing(classOrMethod)));
+            case "supertypes":
+                return snapshot.getSupertypes(classOrMethod);
+            case "why-missing":
+                return snapshot.explainMissing(classOrMethod);
+            default:
+                return null;
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: SnapshotQuery <snapshot> <query> <class or method>");
+        out.println("Queries:");
+        out.println("   who-references   the classes and methods referencing it");
+        out.println("   is-visited       true if it was found on the classpath");
+        out.println("   is-missing       true if it was reported missing");
+        out.println("   supertypes       the direct superclass and interfaces of a class");
+        out.println("   why-missing      why it is, or is not, reported missing");
+    }
+}
@@ -0,0 +1,232 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * References kept on disk instead of in memory, as edges from the class or method referenced to what references it.
+ * Edges are buffered up to a fixed number, then sorted and written to a run file. The runs are merged when the
+ * references are read, so the edges of one class or method are read together, in order. Only the buffer, and a
+ * read buffer for each of at most 64 runs merged at once, are held in memory. Edges may be added from several
+ * threads at once, but are read from one.
+ */
+final class SpilledReferences implements Closeable {
+    private static final int RUN_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_MERGED_RUNS = 64;
+
+    private final Path directory;
+    private final String name;
+    private final long[] buffer;
+    private final List<Path> runs = new ArrayList<>();
+    private int buffered;
+
+    /**
+     * Why edges could not be written, if they could not, so reading fails instead of missing them.
+     */
+    private IOException failure;
+
+    /**
+     * @param bufferedEdges the number of edges held in memory before they are written to a run file.
+     */
+    SpilledReferences(Path directory, String name, int bufferedEdges) {
+        this.directory = directory;
+        this.name = name;
+        this.buffer = new long[Math.max(1, bufferedEdges)];
+    }
+
+    /**
+     * @return the edge from {@code referenced} to what references it.
+     */
+    static long edge(int referenced, int referencedFrom) {
+        return (long) referenced << 32 | referencedFrom;
+    }
+
+    static int referenced(long edge) {
+        return (int) (edge >>> 32);
+    }
+
+    /**
+     * Adds the first {@code count} of {@code edges}, made by {@link #edge(int, int)}.
+     */
+    synchronized void addAll(long[] edges, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (buffered == buffer.length) {
+                try {
+                    writeRun();
+                } catch (IOException e) {
+                    failure = e;
+                    throw e;
+                }
+            }
+            buffer[buffered++] = edges[i];
+        }
+    }
+
+    /**
+     * @return the size of the buffer.
+     */
+    long getBufferedBytes() {
+        return (long) buffer.length * Long.BYTES;
+    }
+
+    private void writeRun() throws IOException {
+        Arrays.sort(buffer, 0, buffered);
+        Path run = Files.createTempFile(directory, name, ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+            long previous = -1;
+            for (int i = 0; i < buffered; i++) {
+                if (buffer[i] != previous) {
+                    out.writeLong(buffer[i]);
+                    previous = buffer[i];
+                }
+            }
+        }
+        buffered = 0;
+    }
+
+    /**
+     * @return the number of run files written so far.
+     */
+    synchronized int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Calls {@code handler} once for each class or method referenced, in order, with everything that references it.
+     */
+    synchronized void forEachReferenced(ReferencedHandler handler) throws IOException {
+        if (failure != null) {
+            throw new IOException("References could not be spilled to " + directory, failure);
+        }
+        if (buffered > 0) {
+            writeRun();
+        }
+        while (runs.size() > MAX_MERGED_RUNS) {
+            // Merged in several passes, so the number of runs read at once is bounded.
+            List<Path> merged = new ArrayList<>(runs.subList(0, MAX_MERGED_RUNS));
+            Path run = Files.createTempFile(directory, name, ".run");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+                merge(merged, out::writeLong);
+            }
+            runs.removeAll(merged);
+            runs.add(run);
+            for (Path path : merged) {
+                Files.delete(path);
+            }
+        }
+        int[] current = new int[1];
+        IntSet[] referencedFrom = {new IntSet()};
+        merge(runs, edge -> {
+            int referenced = referenced(edge);
+            if (referenced != current[0] && !referencedFrom[0].isEmpty()) {
+                handler.handle(current[0], referencedFrom[0]);
+                referencedFrom[0] = new IntSet();
+            }
+            current[0] = referenced;
+            referencedFrom[0].add((int) edge);
+        });
+        if (!referencedFrom[0].isEmpty()) {
+            handler.handle(current[0], referencedFrom[0]);
+        }
+    }
+
+    /**
+     * Gives the edges of the sorted {@code runs} to {@code handler} in order, each edge once.
+     */
+    private static void merge(List<Path> runs, EdgeHandler handler) throws IOException {
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Math.max(1, runs.size()));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            long previous = -1;
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                if (reader.edge != previous) {
+                    handler.handle(reader.edge);
+                    previous = reader.edge;
+                }
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        buffered = 0;
+    }
+
+    private interface EdgeHandler {
+        void handle(long edge) throws IOException;
+    }
+
+    interface ReferencedHandler {
+        /**
+         * @param referencedFrom everything that references {@code referenced}. The set is not used again.
+         */
+        void handle(int referenced, IntSet referencedFrom) throws IOException;
+    }
+
+    /**
+     * The next edge of a run file, ordered by that edge.
+     */
+    private static final class RunReader implements Comparable<RunReader>, Closeable {
+        private final DataInputStream in;
+        private long edge;
+
+        RunReader(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                edge = in.readLong();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return Long.compare(edge, other.edge);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * Read-only view of a map from a symbol to a set of symbols, as the strings they represent.
+ */
+final class SymbolMap extends AbstractMap<String, Set<String>> {
+    private final SymbolTable symbols;
+    private final IntObjectMap<IntSet> references;
+
+    SymbolMap(SymbolTable symbols, IntObjectMap<IntSet> references) {
+        this.symbols = symbols;
+        this.references = references;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    IntObjectMap<IntSet> getReferences() {
+        return references;
+    }
+
+    @Override
+    public Set<Entry<String, Set<String>>> entrySet() {
+        return new AbstractSet<Entry<String, Set<String>>>() {
+            @Override
+            public Iterator<Entry<String, Set<String>>> iterator() {
+                PrimitiveIterator.OfInt keys = references.keyIterator();
+                return new Iterator<Entry<String, Set<String>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Set<String>> next() {
+                        int key = keys.nextInt();
+                        return new SimpleImmutableEntry<>(symbols.name(key), new SymbolSet(symbols, references.get(key)));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return references.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> get(Object key) {
+        IntSet values = key instanceof String ? references.get(symbols.findClassOrMethod((String) key)) : null;
+        return values == null ? null : new SymbolSet(symbols, values);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return references.size();
+    }
+}
@@ -0,0 +1,146 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.Arrays;
+
+/**
+ * A set of symbols in the order of their names, so subsets of it can be sorted as ints.
+ * The symbols are sorted once, comparing the strings the table already holds a char at a time,
+ * without building the names of methods and members. Not thread safe.
+ */
+final class SymbolOrder {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final SymbolTable symbols;
+    private final String[] leftSegments = new String[4];
+    private final String[] rightSegments = new String[4];
+
+    /**
+     * The symbols in order, and the position in it of each symbol, indexed by id.
+     */
+    private final int[] idsByRank;
+    private final int[] ranks;
+
+    SymbolOrder(SymbolTable symbols, IntSet ids) {
+        this.symbols = symbols;
+        idsByRank = ids.toArray();
+        sort(idsByRank, new int[idsByRank.length], 0, idsByRank.length);
+        int maxId = 0;
+        for (int id : idsByRank) {
+            maxId = Math.max(maxId, id);
+        }
+        ranks = new int[maxId + 1];
+        for (int rank = 0; rank < idsByRank.length; rank++) {
+            ranks[idsByRank[rank]] = rank;
+        }
+    }
+
+    /**
+     * @return the symbols of this order, sorted by name.
+     */
+    int[] sorted() {
+        return idsByRank.clone();
+    }
+
+    /**
+     * @param ids symbols of this order.
+     * @return {@code ids} sorted by name.
+     */
+    int[] sorted(IntSet ids) {
+        int[] sorted = ids.toArray();
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ranks[sorted[i]];
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = idsByRank[sorted[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Merge sort of {@code ids[from, to)}, using {@code buffer} for the merge.
+     */
+    private void sort(int[] ids, int[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int id = ids[i];
+                int j = i;
+                while (j > from && compare(ids[j - 1], id) > 0) {
+                    ids[j] = ids[j - 1];
+                    j--;
+                }
+                ids[j] = id;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(ids, buffer, from, middle);
+        sort(ids, buffer, middle, to);
+        if (compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || left < middle && compare(buffer[left], buffer[right]) <= 0) {
+                ids[i] = buffer[left++];
+            } else {
+                ids[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Compares the names of two symbols like {@link String#compareTo(String)} compares them.
+     */
+    private int compare(int left, int right) {
+        int leftCount = segments(left, leftSegments);
+        int rightCount = segments(right, rightSegments);
+        int leftSegment = 0;
+        int rightSegment = 0;
+        int leftIndex = 0;
+        int rightIndex = 0;
+        while (true) {
+            while (leftSegment < leftCount && leftIndex == leftSegments[leftSegment].length()) {
+                leftSegment++;
+                leftIndex = 0;
+            }
+            while (rightSegment < rightCount && rightIndex == rightSegments[rightSegment].length()) {
+                rightSegment++;
+                rightIndex = 0;
+            }
+            if (leftSegment == leftCount || rightSegment == rightCount) {
+                return (leftSegment == leftCount ? 0 : 1) - (rightSegment == rightCount ? 0 : 1);
+            }
+            char leftChar = leftSegments[leftSegment].charAt(leftIndex++);
+            char rightChar = rightSegments[rightSegment].charAt(rightIndex++);
+            if (leftChar != rightChar) {
+                return leftChar - rightChar;
+            }
+        }
+    }
+
+    /**
+     * Stores the strings that make up the name of {@code id}, as written by {@link SymbolTable#name(int)}.
+     *
+     * @return the number of strings.
+     */
+    private int segments(int id, String[] segments) {
+        if (!symbols.isPair(id)) {
+            segments[0] = symbols.name(id);
+            return 1;
+        }
+        int first = symbols.first(id);
+        int second = symbols.second(id);
+        segments[0] = symbols.name(first);
+        if (!symbols.isPair(second)) {
+            segments[1] = symbols.name(second);
+            return 2;
+        }
+        segments[1] = ".";
+        segments[2] = symbols.name(symbols.first(second));
+        segments[3] = symbols.name(symbols.second(second));
+        return 4;
+    }
+}
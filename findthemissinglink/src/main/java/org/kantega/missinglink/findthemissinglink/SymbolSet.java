@@ -0,0 +1,52 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Read-only view of a set of symbols as the strings they represent.
+ */
+final class SymbolSet extends AbstractSet<String> {
+    private final SymbolTable symbols;
+    private final IntSet ids;
+
+    SymbolSet(SymbolTable symbols, IntSet ids) {
+        this.symbols = symbols;
+        this.ids = ids;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    IntSet getIds() {
+        return ids;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        PrimitiveIterator.OfInt iterator = ids.iterator();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return symbols.name(iterator.nextInt());
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && ids.contains(symbols.findClassOrMethod((String) o));
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+}
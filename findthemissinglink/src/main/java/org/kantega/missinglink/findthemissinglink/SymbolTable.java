@@ -0,0 +1,242 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Interned symbols, each identified by a positive int.
+ * A symbol is either a string, such as a class name, a member name or a descriptor,
+ * or a pair of two other symbols:
+ * <ul>
+ *     <li>a member is the pair of its name and descriptor, {@code getName()Ljava/lang/String;}</li>
+ *     <li>a method is the pair of its owner class and member, {@code java/lang/Class.getName()Ljava/lang/String;}</li>
+ * </ul>
+ * The scanned model only holds symbol ids, and symbols are turned back into strings when a report is written.
+ * Scan results can only be combined if they use the same table, so a table lives as long as what is scanned with it:
+ * one {@link ClassFileVisitor}, or the visitors of one build sharing a {@link SessionIndex}.
+ * Symbols are never removed. Thread safe.
+ */
+public final class SymbolTable {
+    private static final int CHUNK_BITS = 13;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 17;
+    private static final int PAIR_STRIPE_BITS = 6;
+
+    private final ConcurrentMap<String, Integer> strings = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    /**
+     * The id of each pair, keyed by the pair as a long. Methods and members are the most common symbols, so they
+     * are kept in primitive maps, each guarded by its own lock.
+     */
+    private final LongIntMap[] pairs = new LongIntMap[1 << PAIR_STRIPE_BITS];
+
+    /**
+     * The string of each id that is a string, and the pair, as a long, of each id that is a pair.
+     */
+    private final AtomicReferenceArray<String[]> stringsById = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicReferenceArray<long[]> pairsById = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    public SymbolTable() {
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new LongIntMap();
+        }
+    }
+
+    /**
+     * @return the id of {@code string}, which is interned if it is not known already.
+     */
+    public int intern(String string) {
+        Integer id = strings.get(string);
+        return id != null ? id : strings.computeIfAbsent(string, this::allocateString);
+    }
+
+    /**
+     * @return the id of the member with the given name and descriptor.
+     */
+    public int member(String name, String desc) {
+        return pair(intern(name), intern(desc));
+    }
+
+    /**
+     * @return the id of the method with the given owner class, name and descriptor.
+     */
+    public int method(String owner, String name, String desc) {
+        return method(intern(owner), member(name, desc));
+    }
+
+    /**
+     * @return the id of the method {@code member} in class {@code owner}.
+     */
+    public int method(int owner, int member) {
+        return pair(owner, member);
+    }
+
+    int pair(int first, int second) {
+        long key = pairKey(first, second);
+        LongIntMap stripe = stripeOf(key);
+        synchronized (stripe) {
+            int id = stripe.get(key);
+            if (id == 0) {
+                id = allocatePair(key);
+                stripe.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return the id of the pair, or 0 if it has never been interned.
+     */
+    int findPair(int first, int second) {
+        long key = pairKey(first, second);
+        LongIntMap stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    /**
+     * @return the id of {@code string}, or 0 if it has never been interned.
+     */
+    public int find(String string) {
+        Integer id = strings.get(string);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     * @param method a method on the form {@code owner.name(desc)}
+     * @return the id of the method, or 0 if it has never been interned.
+     */
+    public int findMethod(String method) {
+        int dot = method.indexOf('.');
+        int paren = method.indexOf('(', dot);
+        if (dot < 0 || paren < 0) {
+            return 0;
+        }
+        int owner = find(method.substring(0, dot));
+        int name = find(method.substring(dot + 1, paren));
+        int desc = find(method.substring(paren));
+        if (owner == 0 || name == 0 || desc == 0) {
+            return 0;
+        }
+        int member = findPair(name, desc);
+        return member == 0 ? 0 : findPair(owner, member);
+    }
+
+    /**
+     * @return the id of a class or method written as a string, or 0 if it has never been interned.
+     */
+    public int findClassOrMethod(String classOrMethod) {
+        return classOrMethod.indexOf('.') < 0 ? find(classOrMethod) : findMethod(classOrMethod);
+    }
+
+    public boolean isPair(int id) {
+        long[] chunk = pairsById.get(id >>> CHUNK_BITS);
+        return chunk != null && chunk[id & (CHUNK_SIZE - 1)] != 0;
+    }
+
+    /**
+     * @return the owner class of a method, or the name of a member.
+     */
+    public int first(int pair) {
+        return (int) (pairOf(pair) >>> 32);
+    }
+
+    /**
+     * @return the member of a method, or the descriptor of a member.
+     */
+    public int second(int pair) {
+        return (int) pairOf(pair);
+    }
+
+    /**
+     * @return the class of {@code id} if it is a method, and {@code id} itself otherwise.
+     */
+    public int classOf(int id) {
+        return isPair(id) ? first(id) : id;
+    }
+
+    /**
+     * @return the symbol as a string. Methods are written {@code owner.name(desc)},
+     * and members {@code name(desc)}.
+     */
+    public String name(int id) {
+        String[] chunk = stringsById.get(id >>> CHUNK_BITS);
+        String string = chunk == null ? null : chunk[id & (CHUNK_SIZE - 1)];
+        if (string != null) {
+            return string;
+        }
+        int first = first(id);
+        int second = second(id);
+        if (isPair(second)) {
+            return name(first) + "." + name(second);
+        }
+        return name(first) + name(second);
+    }
+
+    /**
+     * @return the number of symbols interned.
+     */
+    public int size() {
+        return lastId.get();
+    }
+
+    private long pairOf(int id) {
+        long[] chunk = pairsById.get(id >>> CHUNK_BITS);
+        long pair = chunk == null ? 0 : chunk[id & (CHUNK_SIZE - 1)];
+        if (pair == 0) {
+            throw new IllegalArgumentException("Unknown pair " + id);
+        }
+        return pair;
+    }
+
+    private LongIntMap stripeOf(long key) {
+        return pairs[(int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - PAIR_STRIPE_BITS))];
+    }
+
+    /**
+     * Called while the new string is being added to its map, so the string is stored before its id can be seen
+     * by any other thread.
+     */
+    private Integer allocateString(String string) {
+        int id = nextId();
+        chunkOf(stringsById, id, String[]::new)[id & (CHUNK_SIZE - 1)] = string;
+        return id;
+    }
+
+    /**
+     * Called while holding the lock of the pair's map, so the pair is stored before its id can be seen
+     * by any other thread.
+     */
+    private int allocatePair(long pair) {
+        int id = nextId();
+        chunkOf(pairsById, id, long[]::new)[id & (CHUNK_SIZE - 1)] = pair;
+        return id;
+    }
+
+    private int nextId() {
+        int id = lastId.incrementAndGet();
+        if (id >>> CHUNK_BITS >= MAX_CHUNKS) {
+            throw new IllegalStateException("Symbol table is full");
+        }
+        return id;
+    }
+
+    private static <T> T chunkOf(AtomicReferenceArray<T> chunks, int id, IntFunction<T> newChunk) {
+        int chunkIndex = id >>> CHUNK_BITS;
+        T chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, newChunk.apply(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    private static long pairKey(int first, int second) {
+        return ((long) first << 32) | (second & 0xffffffffL);
+    }
+}
@@ -0,0 +1,287 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds what changes when a few artifacts of a classpath are swapped, typically for other versions of the same
+ * libraries: the links that go missing, and the missing links that are resolved.
+ * <p>
+ * Every artifact is indexed once, and the baseline is analyzed once, so many candidate classpaths can be compared
+ * with the same baseline. For a candidate, only the swapped artifacts are indexed, and only the references that
+ * may have changed are resolved again: the references made from the swapped artifacts, references to the classes
+ * they declare, and references to the methods of classes inheriting from those classes.
+ * Everything else resolves as it did in the baseline.
+ * <p>
+ * Whole artifacts are compared, so the reachability mode of the visitor is not used.
+ */
+public class UpgradeDiff {
+    private final SymbolTable symbols;
+    private final ClassFileVisitor visitor;
+    private final List<String> baseline;
+    private final List<String> ignorePackages;
+    private final List<String> ignoreReferencesInPackages;
+    private final boolean ignoreAnnotationReferences;
+    private final Map<String, ScanResult> artifacts = new HashMap<>();
+    private final Report baselineReport;
+
+    /**
+     * Indexes and analyzes {@code baseline}, with the ignore configuration of
+     * {@link ClassFileVisitor#generateReportForJar(List, List, List, boolean)}.
+     */
+    public UpgradeDiff(ClassFileVisitor visitor, List<String> baseline, List<String> ignorePackages, List<String> ignoreReferencesInPackages, boolean ignoreAnnotationReferences) throws IOException {
+        this.visitor = visitor;
+        this.symbols = visitor.getSymbols();
+        this.baseline = new ArrayList<>(baseline);
+        this.ignorePackages = ignorePackages;
+        this.ignoreReferencesInPackages = ignoreReferencesInPackages;
+        this.ignoreAnnotationReferences = ignoreAnnotationReferences;
+
+        long start = System.nanoTime();
+        index(baseline);
+        ScanResult merged = new ScanResult(symbols);
+        for (String artifact : baseline) {
+            merged.addAll(artifacts.get(artifact));
+        }
+        visitor.getMetrics().recordPhase("scan", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        merged.addAll(visitor.platformClassesFor(merged));
+        visitor.getMetrics().recordPhase("platform", System.nanoTime() - start);
+        baselineReport = new Report(merged, visitor.getScanProfile(), ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+    }
+
+    /**
+     * @return the report of the baseline classpath.
+     */
+    public Report getBaseline() {
+        return baselineReport;
+    }
+
+    /**
+     * @param candidate the baseline classpath with some artifacts removed, replaced or added.
+     * @return the links missing in {@code candidate} that are not missing in the baseline, and the other way round.
+     */
+    public Changes compare(List<String> candidate) throws IOException {
+        long start = System.nanoTime();
+        index(candidate);
+        Set<String> inBaseline = new HashSet<>(baseline);
+        Set<String> inCandidate = new HashSet<>(candidate);
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        IntSet swappedClasses = new IntSet();
+        IntSet swappedClassReferences = new IntSet();
+        IntSet swappedMethodReferences = new IntSet();
+        for (String artifact : baseline) {
+            if (!inCandidate.contains(artifact)) {
+                removed.add(artifact);
+                addSwapped(artifacts.get(artifact), swappedClasses, swappedClassReferences, swappedMethodReferences);
+            }
+        }
+        for (String artifact : candidate) {
+            if (!inBaseline.contains(artifact)) {
+                added.add(artifact);
+                addSwapped(artifacts.get(artifact), swappedClasses, swappedClassReferences, swappedMethodReferences);
+            }
+        }
+
+        // What the candidate declares is needed to resolve anything, but only the references that may have
+        // changed are resolved.
+        ScanResult changed = new ScanResult(symbols);
+        for (String artifact : candidate) {
+            changed.addDeclarations(artifacts.get(artifact));
+        }
+        SwappedHierarchy hierarchy = new SwappedHierarchy(swappedClasses, baselineReport.getSupertypes(), changed.supertypesByClass);
+        IntSet affectedClasses = new IntSet();
+        IntSet affectedMethods = new IntSet();
+        affectedClasses.addAll(swappedClasses);
+        affectedClasses.addAll(swappedClassReferences);
+        affectedMethods.addAll(swappedMethodReferences);
+        for (String artifact : candidate) {
+            ScanResult partial = artifacts.get(artifact);
+            partial.classesReferenced.forEach((referencedFrom, className) -> {
+                if (swappedClassReferences.contains(className) || swappedClasses.contains(className)) {
+                    affectedClasses.add(className);
+                    changed.classesReferenced.computeIfAbsent(className, key -> new IntSet()).addAll(referencedFrom);
+                }
+            });
+            partial.methodsReferenced.forEach((referencedFrom, method) -> {
+                if (swappedMethodReferences.contains(method) || hierarchy.contains(symbols.classOf(method))) {
+                    affectedMethods.add(method);
+                    changed.methodsReferenced.computeIfAbsent(method, key -> new IntSet()).addAll(referencedFrom);
+                }
+            });
+        }
+        changed.addAll(visitor.platformClassesFor(changed));
+        Report candidateReport = new Report(changed, visitor.getScanProfile(), ignorePackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+
+        Changes changes = new Changes(removed, added,
+                newlyMissing(candidateReport.findClassesMissing(), baselineReport.findClassesMissing()),
+                newlyMissing(candidateReport.findMethodsMissing(), baselineReport.findMethodsMissing()),
+                resolved(baselineReport.findClassesMissing(), candidateReport.findClassesMissing(), affectedClasses),
+                resolved(baselineReport.findMethodsMissing(), candidateReport.findMethodsMissing(), affectedMethods));
+        visitor.getMetrics().recordPhase("upgradeDiff", System.nanoTime() - start);
+        return changes;
+    }
+
+    /**
+     * Indexes the artifacts not indexed before.
+     */
+    private void index(List<String> classpath) throws IOException {
+        List<String> notIndexed = new ArrayList<>();
+        for (String artifact : classpath) {
+            if (!artifacts.containsKey(artifact) && !notIndexed.contains(artifact)) {
+                notIndexed.add(artifact);
+            }
+        }
+        List<ScanResult> results = visitor.indexEach(notIndexed, ignorePackages, ignoreReferencesInPackages);
+        for (int i = 0; i < notIndexed.size(); i++) {
+            artifacts.put(notIndexed.get(i), results.get(i));
+        }
+    }
+
+    private static void addSwapped(ScanResult swapped, IntSet classes, IntSet classReferences, IntSet methodReferences) {
+        classes.addAll(swapped.classesVisited);
+        swapped.classesReferenced.forEach((referencedFrom, className) -> classReferences.add(className));
+        swapped.methodsReferenced.forEach((referencedFrom, method) -> methodReferences.add(method));
+    }
+
+    private Map<String, Set<String>> newlyMissing(IntObjectMap<IntSet> missing, IntObjectMap<IntSet> missingInBaseline) {
+        IntObjectMap<IntSet> newlyMissing = new IntObjectMap<>();
+        missing.forEach((referencedFrom, classOrMethod) -> {
+            if (!missingInBaseline.containsKey(classOrMethod)) {
+                newlyMissing.put(classOrMethod, referencedFrom);
+            }
+        });
+        return new SymbolMap(symbols, newlyMissing);
+    }
+
+    private Set<String> resolved(IntObjectMap<IntSet> missingInBaseline, IntObjectMap<IntSet> missing, IntSet affected) {
+        IntSet resolved = new IntSet();
+        missingInBaseline.forEach((referencedFrom, classOrMethod) -> {
+            if (affected.contains(classOrMethod) && !missing.containsKey(classOrMethod)) {
+                resolved.add(classOrMethod);
+            }
+        });
+        return new SymbolSet(symbols, resolved);
+    }
+
+    /**
+     * The classes declared by the swapped artifacts, and the classes inheriting from them in the baseline or
+     * the candidate, whose methods may resolve differently.
+     */
+    private static final class SwappedHierarchy {
+        private final IntSet swapped;
+        private final IntObjectMap<IntSet> baselineSupertypes;
+        private final IntObjectMap<IntSet> candidateSupertypes;
+        private final IntObjectMap<Boolean> known = new IntObjectMap<>();
+
+        SwappedHierarchy(IntSet swapped, IntObjectMap<IntSet> baselineSupertypes, IntObjectMap<IntSet> candidateSupertypes) {
+            this.swapped = swapped;
+            this.baselineSupertypes = baselineSupertypes;
+            this.candidateSupertypes = candidateSupertypes;
+        }
+
+        boolean contains(int className) {
+            Boolean inherits = known.get(className);
+            if (inherits != null) {
+                return inherits;
+            }
+            // Not yet known while the supertypes are looked at, which ends a cycle in a broken hierarchy.
+            known.put(className, Boolean.FALSE);
+            boolean found = swapped.contains(className)
+                    || anyContained(baselineSupertypes.get(className))
+                    || anyContained(candidateSupertypes.get(className));
+            known.put(className, found);
+            return found;
+        }
+
+        private boolean anyContained(IntSet supertypes) {
+            if (supertypes != null) {
+                for (int supertype : supertypes.toArray()) {
+                    if (contains(supertype)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The links that go missing or are resolved when the baseline classpath is swapped for a candidate.
+     */
+    public static final class Changes {
+        private final List<String> removed;
+        private final List<String> added;
+        private final Map<String, Set<String>> classesMissing;
+        private final Map<String, Set<String>> methodsMissing;
+        private final Set<String> classesResolved;
+        private final Set<String> methodsResolved;
+
+        Changes(List<String> removed, List<String> added, Map<String, Set<String>> classesMissing, Map<String, Set<String>> methodsMissing,
+                Set<String> classesResolved, Set<String> methodsResolved) {
+            this.removed = Collections.unmodifiableList(removed);
+            this.added = Collections.unmodifiableList(added);
+            this.classesMissing = classesMissing;
+            this.methodsMissing = methodsMissing;
+            this.classesResolved = classesResolved;
+            this.methodsResolved = methodsResolved;
+        }
+
+        /**
+         * @return the artifacts of the baseline that are not in the candidate.
+         */
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the artifacts of the candidate that are not in the baseline.
+         */
+        public List<String> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return classes missing in the candidate but not in the baseline, and where they are referenced.
+         */
+        public Map<String, Set<String>> getClassesMissing() {
+            return classesMissing;
+        }
+
+        /**
+         * @return methods missing in the candidate but not in the baseline, and where they are referenced.
+         */
+        public Map<String, Set<String>> getMethodsMissing() {
+            return methodsMissing;
+        }
+
+        /**
+         * @return classes missing in the baseline that are found, or no longer referenced, in the candidate.
+         */
+        public Set<String> getClassesResolved() {
+            return classesResolved;
+        }
+
+        /**
+         * @return methods missing in the baseline that are found, or no longer referenced, in the candidate.
+         */
+        public Set<String> getMethodsResolved() {
+            return methodsResolved;
+        }
+
+        /**
+         * @return true if no link goes missing or is resolved.
+         */
+        public boolean isEmpty() {
+            return classesMissing.isEmpty() && methodsMissing.isEmpty() && classesResolved.isEmpty() && methodsResolved.isEmpty();
+        }
+    }
+}
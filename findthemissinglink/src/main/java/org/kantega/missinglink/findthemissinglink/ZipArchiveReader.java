@@ -0,0 +1,355 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of a zip archive held in a {@link ByteBuffer}, typically a memory-mapped file.
+ * The central directory is read once, and each matching entry is inflated into a buffer that is reused
+ * for the next entry. An instance must only be used by one thread, and closed to free the native memory of
+ * its inflater. Closing does not unmap the archive.
+ */
+final class ZipArchiveReader implements Closeable {
+    /**
+     * The largest archive that can be mapped into a single buffer.
+     */
+    static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer archive;
+    private final String source;
+    private Inflater inflater;
+    private byte[] input = new byte[16 * 1024];
+    private byte[] output = new byte[64 * 1024];
+
+    /**
+     * @param source the name of the archive, used in error messages.
+     */
+    ZipArchiveReader(ByteBuffer archive, String source) {
+        this.archive = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.source = source;
+    }
+
+    /**
+     * @return a reader of {@code path} mapped into memory. The mapping stays valid after the file is closed.
+     */
+    static ZipArchiveReader map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_MAPPED_SIZE) {
+                throw new IOException(path + " is too large to be mapped into memory");
+            }
+            return new ZipArchiveReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path.toString());
+        }
+    }
+
+    /**
+     * Calls {@code handler} with the content of every entry whose name ends with {@code suffix}, in the order
+     * they are listed in the central directory. The buffer given to the handler is overwritten by the next entry.
+     */
+    void forEachEntry(String suffix, EntryHandler handler) throws IOException {
+        forEachDirectoryEntry(suffix, (name, method, localHeader, compressedSize, size) -> {
+            int length = read(name, method, localHeader, compressedSize, size);
+            handler.handle(name, output, 0, length);
+        });
+    }
+
+    /**
+     * @return the entries whose name ends with {@code suffix}, in the order they are listed in the central directory.
+     * Nothing is read until an entry is given to {@link #read(Entry, EntryHandler)}.
+     */
+    List<Entry> listEntries(String suffix) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        forEachDirectoryEntry(suffix, (name, method, localHeader, compressedSize, size) ->
+                entries.add(new Entry(name, method, localHeader, compressedSize, size)));
+        return entries;
+    }
+
+    /**
+     * Calls {@code handler} with the content of {@code entry}, which must be listed by this reader.
+     */
+    void read(Entry entry, EntryHandler handler) throws IOException {
+        int length = read(entry.name, entry.method, entry.localHeader, entry.compressedSize, entry.size);
+        handler.handle(entry.name, output, 0, length);
+    }
+
+    /**
+     * Calls {@code handler} with a reader of every entry whose name ends with {@code suffix}.
+     * Stored entries are read directly from this archive, compressed entries are inflated into memory.
+     * Nothing is extracted to disk. The handler closes the reader when it no longer needs it.
+     */
+    void forEachNestedArchive(String suffix, NestedArchiveHandler handler) throws IOException {
+        forEachDirectoryEntry(suffix, (name, method, localHeader, compressedSize, size) -> {
+            String nestedSource = source + "!/" + name;
+            if (method == STORED) {
+                // Nested archives are usually stored, like the jars in a Spring Boot jar, and need no copying.
+                ByteBuffer nested = archive.duplicate();
+                int data = dataPosition(name, localHeader);
+                ((Buffer) nested).limit(data + (int) size);
+                ((Buffer) nested).position(data);
+                handler.handle(name, new ZipArchiveReader(nested.slice(), nestedSource));
+            } else {
+                int length = read(name, method, localHeader, compressedSize, size);
+                byte[] content = Arrays.copyOf(output, length);
+                handler.handle(name, new ZipArchiveReader(ByteBuffer.wrap(content), nestedSource));
+            }
+        });
+    }
+
+    private void forEachDirectoryEntry(String suffix, DirectoryEntryHandler handler) throws IOException {
+        byte[] suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+        int endOfCentralDirectory = findEndOfCentralDirectory();
+        long entries = u16(endOfCentralDirectory + 10);
+        long directorySize = u32(endOfCentralDirectory + 12);
+        long directoryOffset = u32(endOfCentralDirectory + 16);
+        int directoryEnd = endOfCentralDirectory;
+        if (entries == 0xffff || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            int locator = endOfCentralDirectory - 20;
+            if (locator >= 0 && archive.getInt(locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+                int zip64End = position(archive.getLong(locator + 8));
+                if (archive.getInt(zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                    throw new ZipException("Invalid zip64 end of central directory in " + source);
+                }
+                entries = archive.getLong(zip64End + 32);
+                directorySize = archive.getLong(zip64End + 40);
+                directoryOffset = archive.getLong(zip64End + 48);
+                directoryEnd = zip64End;
+            }
+        }
+        // Offsets are relative to the start of the zip, which is not the start of the archive if
+        // something, like a launch script, is prepended to it.
+        long prefix = directoryEnd - directorySize - directoryOffset;
+        if (prefix < 0) {
+            throw new ZipException("Invalid central directory in " + source);
+        }
+
+        int position = position(prefix + directoryOffset);
+        long[] sizes = new long[3];
+        for (long i = 0; i < entries; i++) {
+            if (archive.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+                throw new ZipException("Invalid central directory entry in " + source);
+            }
+            int method = u16(position + 10);
+            int nameLength = u16(position + 28);
+            int extraLength = u16(position + 30);
+            int commentLength = u16(position + 32);
+            int name = position + 46;
+            if (endsWith(name, nameLength, suffixBytes)) {
+                sizes[0] = u32(position + 24);
+                sizes[1] = u32(position + 20);
+                sizes[2] = u32(position + 42);
+                if (sizes[0] == ZIP64_MAGIC || sizes[1] == ZIP64_MAGIC || sizes[2] == ZIP64_MAGIC) {
+                    readZip64Sizes(name + nameLength, extraLength, sizes);
+                }
+                handler.handle(string(name, nameLength), method, position(prefix + sizes[2]), sizes[1], sizes[0]);
+            }
+            position = name + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Inflates an entry into {@link #output}.
+     *
+     * @return the length of the entry.
+     */
+    private int read(String name, int method, int localHeader, long compressedSize, long size) throws IOException {
+        int data = dataPosition(name, localHeader);
+        if (size > Integer.MAX_VALUE - 8 || compressedSize > Integer.MAX_VALUE - 8) {
+            throw new ZipException(name + " in " + source + " is too large");
+        }
+        int length = (int) size;
+        if (output.length < length) {
+            output = new byte[Math.max(length, output.length * 2)];
+        }
+        if (method == STORED) {
+            copy(data, output, length);
+            return length;
+        }
+        if (method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method + " for " + name + " in " + source);
+        }
+
+        int compressedLength = (int) compressedSize;
+        // The inflater needs an extra dummy byte at the end of the input when there is no zlib header.
+        if (input.length < compressedLength + 1) {
+            input = new byte[Math.max(compressedLength + 1, input.length * 2)];
+        }
+        copy(data, input, compressedLength);
+        input[compressedLength] = 0;
+        if (inflater == null) {
+            // Created when first needed, since archives that only store their entries, like most nested
+            // archives, need none.
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        inflater.setInput(input, 0, compressedLength + 1);
+        int inflated = 0;
+        try {
+            while (inflated < length) {
+                int n = inflater.inflate(output, inflated, length - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Could not inflate " + name + " in " + source + ": " + e.getMessage());
+        }
+        if (inflated != length) {
+            throw new ZipException("Truncated entry " + name + " in " + source);
+        }
+        return length;
+    }
+
+    /**
+     * Frees the inflater. The reader must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private int dataPosition(String name, int localHeader) throws ZipException {
+        if (archive.getInt(localHeader) != LOCAL_FILE_HEADER) {
+            throw new ZipException("Invalid local header for " + name + " in " + source);
+        }
+        return localHeader + 30 + u16(localHeader + 26) + u16(localHeader + 28);
+    }
+
+    /**
+     * Replaces the sizes and offset that did not fit in the central directory entry by their values in the
+     * zip64 extra field. The values present are in the order uncompressed size, compressed size, offset.
+     */
+    private void readZip64Sizes(int extra, int extraLength, long[] sizes) throws ZipException {
+        int end = extra + extraLength;
+        while (extra + 4 <= end) {
+            int id = u16(extra);
+            int length = u16(extra + 2);
+            if (id == ZIP64_EXTRA_FIELD) {
+                int value = extra + 4;
+                for (int i = 0; i < sizes.length; i++) {
+                    if (sizes[i] == ZIP64_MAGIC) {
+                        sizes[i] = archive.getLong(value);
+                        value += 8;
+                    }
+                }
+                return;
+            }
+            extra += 4 + length;
+        }
+        throw new ZipException("Missing zip64 extra field in " + source);
+    }
+
+    /**
+     * The end of central directory record is last in the archive, followed by a comment of at most 64KB.
+     */
+    private int findEndOfCentralDirectory() throws ZipException {
+        int last = archive.limit() - 22;
+        int first = Math.max(0, last - 0xffff);
+        for (int position = last; position >= first; position--) {
+            if (archive.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+                return position;
+            }
+        }
+        throw new ZipException("No central directory found in " + source);
+    }
+
+    private boolean endsWith(int name, int nameLength, byte[] suffix) {
+        if (nameLength < suffix.length) {
+            return false;
+        }
+        int start = name + nameLength - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (archive.get(start + i) != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+        copy(position, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void copy(int position, byte[] target, int length) {
+        // Cast to Buffer, since ByteBuffer.position(int) does not exist on Java 8.
+        ((Buffer) archive).position(position);
+        archive.get(target, 0, length);
+    }
+
+    private int position(long offset) throws ZipException {
+        if (offset < 0 || offset >= archive.limit()) {
+            throw new ZipException("Invalid offset " + offset + " in " + source);
+        }
+        return (int) offset;
+    }
+
+    private int u16(int position) {
+        return archive.getShort(position) & 0xffff;
+    }
+
+    private long u32(int position) {
+        return archive.getInt(position) & ZIP64_MAGIC;
+    }
+
+    /**
+     * Where an entry is found in the archive, as listed in the central directory.
+     */
+    static final class Entry {
+        final String name;
+        private final int method;
+        private final int localHeader;
+        private final long compressedSize;
+        private final long size;
+
+        private Entry(String name, int method, int localHeader, long compressedSize, long size) {
+            this.name = name;
+            this.method = method;
+            this.localHeader = localHeader;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+
+    interface EntryHandler {
+        /**
+         * @param buffer holds the content of the entry from {@code offset}. It is only valid until the handler returns.
+         */
+        void handle(String name, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    interface NestedArchiveHandler {
+        void handle(String name, ZipArchiveReader nested) throws IOException;
+    }
+
+    private interface DirectoryEntryHandler {
+        void handle(String name, int method, int localHeader, long compressedSize, long size) throws IOException;
+    }
+}
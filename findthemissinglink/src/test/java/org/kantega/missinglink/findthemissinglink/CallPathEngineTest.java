@@ -0,0 +1,95 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CallPathEngineTest {
+    private final ScanResult result = new ScanResult();
+
+    @Test
+    public void shortestPathsAreFoundFirst() {
+        call("test/paths/Service.save()V", "test/paths/Missing.run()V");
+        call("test/paths/Controller.post()V", "test/paths/Service.save()V");
+        call("test/paths/Job.execute()V", "test/paths/Missing.run()V");
+        call("test/paths/Service.save()V", "test/paths/Service.save()V");
+
+        CallPathEngine engine = new CallPathEngine(report());
+
+        assertThat(engine.getCallPaths("test/paths/Missing.run()V"), is(asList(
+                "test/paths/Missing.run()V <- test/paths/Job.execute()V",
+                "test/paths/Missing.run()V <- test/paths/Service.save()V <- test/paths/Controller.post()V")));
+    }
+
+    @Test
+    public void pathsAreCutAtMaxDepthAndLimitedPerMethod() throws IOException {
+        call("test/paths/A.a()V", "test/paths/Missing.run()V");
+        call("test/paths/B.b()V", "test/paths/A.a()V");
+        call("test/paths/C.c()V", "test/paths/B.b()V");
+        call("test/paths/D.d()V", "test/paths/Missing.run()V");
+        call("test/paths/E.e()V", "test/paths/Missing.run()V");
+
+        CallPathEngine engine = new CallPathEngine(report());
+        engine.setMaxDepth(2);
+        engine.setMaxPathsPerMethod(2);
+        StringWriter writer = new StringWriter();
+        long written = engine.writeCallPaths(singletonList("test/paths/Missing.run()V"), writer);
+
+        assertThat(written, is(2L));
+        assertThat(writer.toString(), is("test/paths/Missing.run()V <- test/paths/D.d()V\n"
+                + "test/paths/Missing.run()V <- test/paths/E.e()V\n"));
+
+        engine.setMaxPathsPerMethod(10);
+        assertThat(engine.getCallPaths("test/paths/Missing.run()V").get(2),
+                is("test/paths/Missing.run()V <- test/paths/A.a()V <- test/paths/B.b()V <- ..."));
+    }
+
+    @Test
+    public void cyclesEndTheSearch() {
+        call("test/paths/Ping.ping()V", "test/paths/Missing.run()V");
+        call("test/paths/Pong.pong()V", "test/paths/Ping.ping()V");
+        call("test/paths/Ping.ping()V", "test/paths/Pong.pong()V");
+
+        CallPathEngine engine = new CallPathEngine(report());
+
+        assertThat(engine.getCallPaths("test/paths/Missing.run()V"), is(singletonList(
+                "test/paths/Missing.run()V <- test/paths/Ping.ping()V <- test/paths/Pong.pong()V")));
+    }
+
+    @Test
+    public void noPathsAreFoundWhenNoneAreWanted() throws IOException {
+        call("test/paths/Ping.ping()V", "test/paths/Missing.run()V");
+        call("test/paths/Pong.pong()V", "test/paths/Ping.ping()V");
+        call("test/paths/Ping.ping()V", "test/paths/Pong.pong()V");
+
+        CallPathEngine engine = new CallPathEngine(report());
+        engine.setMaxPathsPerMethod(0);
+        StringWriter writer = new StringWriter();
+
+        assertThat(engine.getCallPaths("test/paths/Missing.run()V"), is(Collections.<String>emptyList()));
+        assertThat(engine.writeCallPaths(singletonList("test/paths/Missing.run()V"), writer), is(0L));
+        assertThat(writer.toString(), is(""));
+    }
+
+    private void call(String from, String to) {
+        result.addReferencedMethod(method(to), method(from));
+    }
+
+    private int method(String method) {
+        int dot = method.indexOf('.');
+        int paren = method.indexOf('(');
+        return result.symbols.method(method.substring(0, dot), method.substring(dot + 1, paren), method.substring(paren));
+    }
+
+    private Report report() {
+        return new Report(result, ScanProfile.THOROUGH, emptyList(), emptyList(), false);
+    }
+}
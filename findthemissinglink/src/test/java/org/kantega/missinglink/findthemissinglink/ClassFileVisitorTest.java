@@ -12,9 +12,23 @@ import java.io.Writer;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -91,6 +105,10 @@ public class ClassFileVisitorTest {
         Set<String> classesMissing = report.getClassesMissing().keySet();
         assertThat(classesMissing, not(hasItems("javax/transaction/Transaction")));
         assertThat(classesMissing, hasItems("org/apache/commons/pool/impl/GenericKeyedObjectPool"));
+
+        // Classes in ignored packages are still visited, but what they reference is never recorded.
+        assertThat(report.getClassesVisited(), hasItems("org/apache/commons/dbcp/managed/TransactionContext"));
+        assertThat(report.getMethodsReferenced().containsKey("javax/transaction/Transaction.getStatus()I"), is(false));
     }
 
     @Test
@@ -102,6 +120,444 @@ public class ClassFileVisitorTest {
         assertThat(classesMissing, not(hasItems("javax/annotation/Nullable")));
     }
 
+    @Test
+    public void parallelScanGivesSameResultAsSequentialScan() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath());
+
+        Report sequential = new ClassFileVisitor().generateReportForJar(jars);
+        ClassFileVisitor parallelVisitor = new ClassFileVisitor();
+        parallelVisitor.setParallelism(4);
+        Report parallel = parallelVisitor.generateReportForJar(jars);
+
+        assertThat(parallel.getClassesVisited(), is(sequential.getClassesVisited()));
+        assertThat(parallel.getMethodsVisited(), is(sequential.getMethodsVisited()));
+        assertThat(parallel.getMethodsReferenced(), is(sequential.getMethodsReferenced()));
+        assertThat(parallel.getMethodsMissing(), is(sequential.getMethodsMissing()));
+        assertThat(parallel.getClassesMissing(), is(sequential.getClassesMissing()));
+    }
+
+    @Test
+    public void largeArchiveParsedInPipelineGivesSameResultAsSequentialScan() throws IOException, URISyntaxException {
+        File guavaFile = getJarFile("http://nexus.kantega.lan/service/local/repositories/central/content/com/google/guava/guava/18.0/guava-18.0.jar", "guava-18.0.jar");
+        List<String> jars = singletonList(guavaFile.getAbsolutePath());
+
+        ClassFileVisitor sequentialVisitor = new ClassFileVisitor();
+        Report sequential = sequentialVisitor.generateReportForJar(jars);
+        for (IoBackend ioBackend : IoBackend.values()) {
+            ClassFileVisitor pipelinedVisitor = new ClassFileVisitor();
+            pipelinedVisitor.setArchiveParallelism(4);
+            pipelinedVisitor.setIoBackend(ioBackend);
+            Report pipelined = pipelinedVisitor.generateReportForJar(jars);
+
+            assertThat(pipelined.getClassesVisited(), is(sequential.getClassesVisited()));
+            assertThat(pipelined.getMethodsVisited(), is(sequential.getMethodsVisited()));
+            assertThat(pipelined.getMethodsReferenced(), is(sequential.getMethodsReferenced()));
+            assertThat(pipelined.getClassesReferenced(), is(sequential.getClassesReferenced()));
+            assertThat(pipelinedVisitor.getMetrics().getArtifacts().get(0).getClassesParsed(),
+                    is(sequentialVisitor.getMetrics().getArtifacts().get(0).getClassesParsed()));
+        }
+    }
+
+    @Test
+    public void spilledReferencesGiveSameMissingLinksAsReferencesInMemory() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath());
+        List<String> ignoreReferencesIn = singletonList("org/apache/commons/dbcp/cpdsadapter");
+        Path spillDirectory = Files.createTempDirectory("missing-link-spill");
+
+        Report inMemory = new ClassFileVisitor().generateReportForJar(jars, emptyList(), ignoreReferencesIn, true);
+        ClassFileVisitor spillingVisitor = new ClassFileVisitor();
+        // Small enough for more runs than are merged at once.
+        spillingVisitor.setReferenceMemoryBudget(1024);
+        spillingVisitor.setSpillDirectory(spillDirectory);
+        Report spilled = spillingVisitor.generateReportForJar(jars, emptyList(), ignoreReferencesIn, true);
+
+        assertThat(spilled.getClassesMissing(), is(inMemory.getClassesMissing()));
+        assertThat(spilled.getMethodsMissing(), is(inMemory.getMethodsMissing()));
+        assertThat(spilled.getClassesVisited(), is(inMemory.getClassesVisited()));
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertThat(files.count(), is(0L));
+        }
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void referencesOfALargeArchiveAreSpilledWithinTheBudget() throws IOException, URISyntaxException {
+        File guavaFile = getJarFile("http://nexus.kantega.lan/service/local/repositories/central/content/com/google/guava/guava/18.0/guava-18.0.jar", "guava-18.0.jar");
+        List<String> jars = singletonList(guavaFile.getAbsolutePath());
+        Path spillDirectory = Files.createTempDirectory("missing-link-spill");
+        long budget = 32 * 1024;
+
+        Report inMemory = new ClassFileVisitor().generateReportForJar(jars);
+        ClassFileVisitor spillingVisitor = new ClassFileVisitor();
+        spillingVisitor.setArchiveParallelism(2);
+        spillingVisitor.setReferenceMemoryBudget(budget);
+        spillingVisitor.setSpillDirectory(spillDirectory);
+        Report spilled = spillingVisitor.generateReportForJar(jars);
+
+        long edges = inMemory.getClassesReferenced().values().stream().mapToLong(Set::size).sum()
+                + inMemory.getMethodsReferenced().values().stream().mapToLong(Set::size).sum();
+        assertThat(edges * Long.BYTES > 4 * budget, is(true));
+        assertThat(spillingVisitor.getPeakBufferedReferenceBytes() <= budget, is(true));
+        assertThat(spillingVisitor.getMetrics().getArtifacts().get(0).getMethodsReferenced(), is(0));
+        assertThat(spilled.getMethodsMissing(), is(inMemory.getMethodsMissing()));
+        assertThat(spilled.getClassesMissing(), is(inMemory.getClassesMissing()));
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void mappedArchivesGiveSameResultAsZipFileSystem() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File guavaFile = getJarFile("http://nexus.kantega.lan/service/local/repositories/central/content/com/google/guava/guava/18.0/guava-18.0.jar", "guava-18.0.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), guavaFile.getAbsolutePath());
+
+        ClassFileVisitor zipfsVisitor = new ClassFileVisitor();
+        zipfsVisitor.setIoBackend(IoBackend.ZIPFS);
+        Report zipfs = zipfsVisitor.generateReportForJar(jars);
+        ClassFileVisitor mappedVisitor = new ClassFileVisitor();
+        mappedVisitor.setIoBackend(IoBackend.MAPPED);
+        Report mapped = mappedVisitor.generateReportForJar(jars);
+
+        assertThat(mapped.getClassesVisited(), is(zipfs.getClassesVisited()));
+        assertThat(mapped.getMethodsVisited(), is(zipfs.getMethodsVisited()));
+        assertThat(mapped.getMethodsReferenced(), is(zipfs.getMethodsReferenced()));
+        assertThat(mapped.getClassesReferenced(), is(zipfs.getClassesReferenced()));
+    }
+
+    @Test
+    public void librariesPackagedInWarAreScanned() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        Path war = Files.createTempFile("missing-link", ".war");
+        war.toFile().deleteOnExit();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(war))) {
+            addEntry(zip, "WEB-INF/lib/commons-dbcp-1.4.jar", dbcpFile.toPath(), ZipEntry.DEFLATED);
+            addEntry(zip, "WEB-INF/lib/commons-pool-1.5.4.jar", poolFile.toPath(), ZipEntry.STORED);
+        }
+
+        Report direct = new ClassFileVisitor().generateReportForJar(asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath()));
+        for (IoBackend ioBackend : IoBackend.values()) {
+            ClassFileVisitor visitor = new ClassFileVisitor();
+            visitor.setIoBackend(ioBackend);
+            Report packaged = visitor.generateReportForJar(singletonList(war.toString()));
+
+            assertThat(packaged.getClassesVisited(), is(direct.getClassesVisited()));
+            assertThat(packaged.getMethodsMissing(), is(direct.getMethodsMissing()));
+            assertThat(packaged.getClassesMissing().keySet(), hasItems("javax/transaction/Transaction"));
+        }
+    }
+
+    @Test
+    public void onlyClassesReachableFromEntryPointsAreParsed() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath());
+
+        Report all = new ClassFileVisitor().generateReportForJar(jars);
+        assertThat(all.getClassesMissing().keySet(), hasItems("javax/transaction/Transaction"));
+
+        for (IoBackend ioBackend : IoBackend.values()) {
+            ClassFileVisitor visitor = new ClassFileVisitor();
+            visitor.setIoBackend(ioBackend);
+            visitor.setReachability(true);
+            visitor.setEntryPoints(singletonList("org.apache.commons.dbcp.BasicDataSource"));
+            Report reachable = visitor.generateReportForJar(jars);
+
+            // BasicDataSource does not use the managed data sources, which are the only classes using JTA.
+            assertThat(reachable.getClassesVisited(), hasItems("org/apache/commons/dbcp/BasicDataSource", "org/apache/commons/pool/impl/GenericObjectPool"));
+            assertThat(reachable.getClassesVisited(), not(hasItems("org/apache/commons/dbcp/managed/BasicManagedDataSource")));
+            assertThat(reachable.getClassesMissing().keySet(), not(hasItems("javax/transaction/Transaction")));
+            assertThat(reachable.getClassesVisited().size() < all.getClassesVisited().size(), is(true));
+            for (ScanMetrics.ArtifactMetrics artifact : visitor.getMetrics().getArtifacts()) {
+                assertThat(artifact.getSource(), is(ScanMetrics.ArtifactMetrics.REACHABLE));
+            }
+        }
+    }
+
+    @Test
+    public void fastProfileSkipsLocalVariableTypes()throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        List<String> jars = singletonList(dbcpFile.getAbsolutePath());
+
+        Report thorough = new ClassFileVisitor().generateReportForJar(jars);
+        ClassFileVisitor fastVisitor = new ClassFileVisitor();
+        fastVisitor.setScanProfile(ScanProfile.FAST);
+        Report fast = fastVisitor.generateReportForJar(jars);
+
+        assertThat(thorough.getScanProfile(), is(ScanProfile.THOROUGH));
+        assertThat(fast.getScanProfile(), is(ScanProfile.FAST));
+        assertThat(fast.getMethodsReferenced(), is(thorough.getMethodsReferenced()));
+        // Local variable types are only found in the debug information, so the fast profile sees a subset.
+        fast.getClassesReferenced().forEach((classname, referencedFrom) ->
+                assertThat(thorough.getClassesReferenced().get(classname).containsAll(referencedFrom), is(true)));
+    }
+
+    @Test
+    public void classesProfileFindsMissingClassesWithoutParsingCode() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        List<String> jars = singletonList(dbcpFile.getAbsolutePath());
+        List<String> ignoreReferencesIn = singletonList("org/apache/commons/dbcp/managed");
+
+        Report thorough = new ClassFileVisitor().generateReportForJar(jars, emptyList(), ignoreReferencesIn, true);
+        for (IoBackend ioBackend : IoBackend.values()) {
+            ClassFileVisitor visitor = new ClassFileVisitor();
+            visitor.setIoBackend(ioBackend);
+            visitor.setScanProfile(ScanProfile.CLASSES);
+            Report classes = visitor.generateReportForJar(jars, emptyList(), ignoreReferencesIn, true);
+
+            assertThat(classes.getScanProfile(), is(ScanProfile.CLASSES));
+            assertThat(classes.getClassesMissing().keySet(), is(thorough.getClassesMissing().keySet()));
+            assertThat(classes.getMethodsMissing().keySet(), is(Collections.<String>emptySet()));
+            // Platform classes, and classes whose references are ignored, are only listed.
+            assertThat(classes.getClassesVisited(), hasItems("java/lang/Object", "org/apache/commons/dbcp/managed/TransactionContext"));
+            assertThat(classes.getMethodsVisited(), not(hasItems("java/lang/Object.toString()Ljava/lang/String;")));
+        }
+    }
+
+    @Test
+    public void directoryIsScannedIncrementally()throws IOException, URISyntaxException {
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        Path classes = Files.createTempDirectory("missing-link-classes");
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(poolFile.toPath()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.getName().endsWith(".class")) {
+                    Path file = classes.resolve(entry.getName());
+                    Files.createDirectories(file.getParent());
+                    Files.copy(zip, file);
+                }
+            }
+        }
+        Path cacheDirectory = Files.createTempDirectory("missing-link-index");
+
+        Report archive = new ClassFileVisitor().generateReportForJar(singletonList(poolFile.getAbsolutePath()));
+        Report cold = new ClassFileVisitor(new IndexCache(cacheDirectory)).generateReportForJar(singletonList(classes.toString()));
+        Report warm = new ClassFileVisitor(new IndexCache(cacheDirectory)).generateReportForJar(singletonList(classes.toString()));
+
+        assertThat(cold.getClassesVisited(), is(archive.getClassesVisited()));
+        assertThat(cold.getMethodsReferenced(), is(archive.getMethodsReferenced()));
+        assertThat(warm.getClassesVisited(), is(cold.getClassesVisited()));
+        assertThat(warm.getMethodsReferenced(), is(cold.getMethodsReferenced()));
+
+        Files.delete(classes.resolve("org/apache/commons/pool/impl/StackObjectPool.class"));
+        Report changed = new ClassFileVisitor(new IndexCache(cacheDirectory)).generateReportForJar(singletonList(classes.toString()));
+        assertThat(changed.getClassesVisited(), not(hasItems("org/apache/commons/pool/impl/StackObjectPool")));
+        assertThat(changed.getMethodsMissing().keySet(), hasItems("org/apache/commons/pool/impl/StackObjectPool.<init>(Lorg/apache/commons/pool/PoolableObjectFactory;II)V"));
+    }
+
+    @Test
+    public void cachedIndexGivesSameResultAsScan() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath());
+        Path cacheDirectory = Files.createTempDirectory("missing-link-index");
+
+        ClassFileVisitor coldVisitor = new ClassFileVisitor();
+        coldVisitor.setIndexCache(new IndexCache(cacheDirectory));
+        Report cold = coldVisitor.generateReportForJar(jars);
+        try (Stream<Path> entries = Files.list(cacheDirectory)) {
+            // The platform classes are only listed by the first visitor of the JVM.
+            assertThat(entries.filter(entry -> !entry.getFileName().toString().startsWith(IndexCache.PLATFORM_ENTRY_PREFIX)).count(), is(2L));
+        }
+
+        ClassFileVisitor warmVisitor = new ClassFileVisitor();
+        warmVisitor.setIndexCache(new IndexCache(cacheDirectory));
+        Report warm = warmVisitor.generateReportForJar(jars);
+
+        assertThat(warm.getClassesVisited(), is(cold.getClassesVisited()));
+        assertThat(warm.getMethodsVisited(), is(cold.getMethodsVisited()));
+        assertThat(warm.getClassesReferenced(), is(cold.getClassesReferenced()));
+        assertThat(warm.getMethodsReferenced(), is(cold.getMethodsReferenced()));
+        assertThat(warm.getMethodsMissing(), is(cold.getMethodsMissing()));
+        assertThat(warm.getClassesMissing(), is(cold.getClassesMissing()));
+
+        for (ScanMetrics.ArtifactMetrics artifact : coldVisitor.getMetrics().getArtifacts()) {
+            assertThat(artifact.getSource(), is(ScanMetrics.ArtifactMetrics.SCANNED));
+            assertThat(artifact.getClassesParsed(), is(artifact.getClassesVisited()));
+        }
+        for (ScanMetrics.ArtifactMetrics artifact : warmVisitor.getMetrics().getArtifacts()) {
+            assertThat(artifact.getSource(), is(ScanMetrics.ArtifactMetrics.CACHE));
+            assertThat(artifact.getClassesParsed(), is(0));
+        }
+        assertThat(warmVisitor.getMetrics().getPhases().keySet(), hasItems("platform", "scan"));
+    }
+
+    @Test
+    public void touchedArchiveIsReadFromTheIndexCacheIfItsContentIsUnchanged() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        Path archive = Files.copy(dbcpFile.toPath(), Files.createTempDirectory("missing-link-archive").resolve("commons-dbcp-1.4.jar"));
+        Path cacheDirectory = Files.createTempDirectory("missing-link-index");
+
+        ClassFileVisitor coldVisitor = new ClassFileVisitor(new IndexCache(cacheDirectory));
+        coldVisitor.generateReportForJar(singletonList(archive.toString()));
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(Files.getLastModifiedTime(archive).toMillis() + 60_000));
+        ClassFileVisitor warmVisitor = new ClassFileVisitor(new IndexCache(cacheDirectory));
+        warmVisitor.generateReportForJar(singletonList(archive.toString()));
+
+        // Only the modification time changed, so the content hash tells it is the same archive.
+        for (ScanMetrics.ArtifactMetrics artifact : warmVisitor.getMetrics().getArtifacts()) {
+            assertThat(artifact.getSource(), is(ScanMetrics.ArtifactMetrics.CACHE));
+        }
+    }
+
+    @Test
+    public void platformListingIsReadFromTheIndexCacheUntilTheImageChanges() throws IOException {
+        Path cacheDirectory = Files.createTempDirectory("missing-link-index");
+        Path image = Files.write(Files.createTempFile("modules", ""), new byte[]{1});
+        IndexCache indexCache = new IndexCache(cacheDirectory);
+        List<String> classFiles = asList("java.base/java/lang/Object.class", "java.naming/javax/naming/Context.class");
+
+        assertThat(indexCache.loadPlatformListing("jdk", image), is(Optional.<List<String>>empty()));
+        indexCache.storePlatformListing("jdk", image, classFiles);
+        assertThat(indexCache.loadPlatformListing("jdk", image), is(Optional.of(classFiles)));
+        assertThat(indexCache.loadPlatformListing("other jdk", image), is(Optional.<List<String>>empty()));
+
+        Files.write(image, new byte[]{1, 2});
+        assertThat(indexCache.loadPlatformListing("jdk", image), is(Optional.<List<String>>empty()));
+    }
+
+    @Test
+    public void archivesInSessionIndexAreIndexedOnceForConcurrentVisitors() throws Exception {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        File poolFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar");
+        List<String> jars = asList(dbcpFile.getAbsolutePath(), poolFile.getAbsolutePath());
+        Report alone = new ClassFileVisitor().generateReportForJar(jars);
+
+        SessionIndex sessionIndex = new SessionIndex();
+        List<ClassFileVisitor> visitors = new ArrayList<>();
+        List<Future<Report>> reports = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                ClassFileVisitor visitor = new ClassFileVisitor();
+                visitor.setSessionIndex(sessionIndex);
+                visitors.add(visitor);
+                reports.add(executor.submit(() -> visitor.generateReportForJar(jars)));
+            }
+            for (Future<Report> report : reports) {
+                assertThat(report.get().getMethodsReferenced(), is(alone.getMethodsReferenced()));
+                assertThat(report.get().getMethodsMissing(), is(alone.getMethodsMissing()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(sessionIndex.size(), is(2));
+        long scanned = visitors.stream()
+                .flatMap(visitor -> visitor.getMetrics().getArtifacts().stream())
+                .filter(artifact -> artifact.getSource().equals(ScanMetrics.ArtifactMetrics.SCANNED))
+                .count();
+        assertThat(scanned, is(2L));
+    }
+
+    @Test
+    public void platformClassesAreVisited() throws IOException, URISyntaxException {
+        Report report = new ClassFileVisitor().generateReportForJar(emptyList());
+
+        assertThat(report.getClassesVisited(), hasItems("java/lang/Object", "javax/naming/Context"));
+        // Nothing needs the methods of the platform classes, so they are not parsed.
+        assertThat(report.getMethodsVisited(), not(hasItems("javax/naming/InitialContext.lookup(Ljava/lang/String;)Ljava/lang/Object;")));
+        assertThat(report.getMethodsReferenced().keySet(), is(Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void platformClassesAreParsedWhenNeeded() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        Report report = new ClassFileVisitor().generateReportForJar(singletonList(dbcpFile.getAbsolutePath()));
+
+        // BasicDataSource implements javax/sql/DataSource, which is parsed with its supertypes.
+        assertThat(report.getMethodsVisited(), hasItems("javax/sql/DataSource.getConnection()Ljava/sql/Connection;",
+                "java/sql/Wrapper.isWrapperFor(Ljava/lang/Class;)Z"));
+        assertThat(report.getMethodsVisited(), not(hasItems("javax/swing/AbstractButton.doClick()V")));
+        assertThat(report.getMethodsMissing().keySet(), not(hasItems("org/apache/commons/dbcp/BasicDataSource.isWrapperFor(Ljava/lang/Class;)Z")));
+    }
+
+    @Test
+    public void platformClassesAreKeptForTheJvm() throws IOException, URISyntaxException {
+        File dbcpFile = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar");
+        Report first = new ClassFileVisitor().generateReportForJar(singletonList(dbcpFile.getAbsolutePath()));
+        int parsed = PlatformClasses.forRunningJdk(emptyList(), null).getParsedCount();
+        Report second = new ClassFileVisitor().generateReportForJar(singletonList(dbcpFile.getAbsolutePath()));
+
+        // The second visitor has a symbol table of its own, but parses no platform class again.
+        assertThat(PlatformClasses.forRunningJdk(emptyList(), null).getParsedCount(), is(parsed));
+        assertThat(second.getSymbols(), not(first.getSymbols()));
+        assertThat(second.getMethodsVisited(), is(first.getMethodsVisited()));
+        assertThat(second.getMethodsMissing(), is(first.getMethodsMissing()));
+    }
+
+    @Test
+    public void upgradeDiffListsOnlyLinksThatChange() throws IOException, URISyntaxException {
+        String dbcp = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-dbcp/commons-dbcp/1.4/commons-dbcp-1.4.jar", "commons-dbcp-1.4.jar").getAbsolutePath();
+        String pool = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/commons-pool/commons-pool/1.5.4/commons-pool-1.5.4.jar", "commons-pool-1.5.4.jar").getAbsolutePath();
+        String jta = getJarFile("http://opensource.kantega.no/nexus/service/local/repositories/central/content/org/apache/geronimo/specs/geronimo-jta_1.1_spec/1.1.1/geronimo-jta_1.1_spec-1.1.1.jar", "geronimo-jta_1.1_spec-1.1.1.jar").getAbsolutePath();
+        List<String> baseline = asList(dbcp, pool);
+        List<String> candidate = asList(dbcp, jta);
+
+        UpgradeDiff diff = new UpgradeDiff(new ClassFileVisitor(), baseline, emptyList(), emptyList(), true);
+        UpgradeDiff.Changes changes = diff.compare(candidate);
+
+        Report before = new ClassFileVisitor().generateReportForJar(baseline, emptyList(), emptyList(), true);
+        Report after = new ClassFileVisitor().generateReportForJar(candidate, emptyList(), emptyList(), true);
+        assertThat(changes.getRemoved(), is(singletonList(pool)));
+        assertThat(changes.getAdded(), is(singletonList(jta)));
+        assertThat(changes.getClassesMissing().keySet(), is(difference(after.getClassesMissing().keySet(), before.getClassesMissing().keySet())));
+        assertThat(changes.getMethodsMissing().keySet(), is(difference(after.getMethodsMissing().keySet(), before.getMethodsMissing().keySet())));
+        assertThat(changes.getClassesResolved(), is(difference(before.getClassesMissing().keySet(), after.getClassesMissing().keySet())));
+        assertThat(changes.getMethodsResolved(), is(difference(before.getMethodsMissing().keySet(), after.getMethodsMissing().keySet())));
+        assertThat(changes.getMethodsMissing().keySet(), hasItems("org/apache/commons/pool/impl/GenericKeyedObjectPool.setMaxIdle(I)V"));
+        assertThat(changes.getMethodsResolved(), hasItems("javax/transaction/Transaction.getStatus()I"));
+
+        assertThat(diff.compare(baseline).isEmpty(), is(true));
+    }
+
+    @Test
+    public void inheritedMethodsAreResolvedThroughTheHierarchy() {
+        ScanResult result = new ScanResult();
+        SymbolTable symbols = result.symbols;
+        int base = symbols.intern("test/hierarchy/Base");
+        int named = symbols.intern("test/hierarchy/Named");
+        int impl = symbols.intern("test/hierarchy/Impl");
+        int caller = symbols.method("test/hierarchy/Caller", "call", "()V");
+        result.registerInheritance(impl, base);
+        result.registerInheritance(impl, named);
+        result.addClassMethodMapping(base, symbols.member("size", "()I"));
+        result.addClassMethodMapping(named, symbols.member("name", "()Ljava/lang/String;"));
+        result.addReferencedMethod(symbols.method("test/hierarchy/Impl", "size", "()I"), caller);
+        result.addReferencedMethod(symbols.method("test/hierarchy/Impl", "name", "()Ljava/lang/String;"), caller);
+        result.addReferencedMethod(symbols.method("test/hierarchy/Impl", "id", "()J"), caller);
+
+        Report report = new Report(result, ScanProfile.THOROUGH, emptyList(), emptyList(), false);
+        int symbolCount = symbols.size();
+
+        assertThat(report.getMethodsMissing().keySet(), is(Collections.singleton("test/hierarchy/Impl.id()J")));
+        // The methods looked for in the supertypes are not interned.
+        assertThat(symbols.size(), is(symbolCount));
+    }
+
+    private static Set<String> difference(Set<String> strings, Set<String> removed) {
+        Set<String> difference = new HashSet<>(strings);
+        difference.removeAll(removed);
+        return difference;
+    }
+
+    private void addEntry(ZipOutputStream zip, String name, Path file, int method) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
     private void writeReport(Report report) throws IOException {
         writeLines("methodsvisited.txt", report.getMethodsVisited());
         writeLines("classesvisited.txt", report.getClassesVisited());
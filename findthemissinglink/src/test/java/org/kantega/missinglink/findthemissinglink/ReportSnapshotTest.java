@@ -0,0 +1,84 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReportSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ScanResult result = new ScanResult();
+    private final SymbolTable symbols = result.symbols;
+
+    @Test
+    public void snapshotAnswersQueriesAboutTheReport() throws IOException {
+        visitClass("test/snapshot/Base", "foo()V");
+        visitClass("test/snapshot/Child");
+        visitClass("test/snapshot/Caller", "run()V");
+        result.registerInheritance(symbols.intern("test/snapshot/Child"), symbols.intern("test/snapshot/Base"));
+        int run = symbols.method("test/snapshot/Caller", "run", "()V");
+        result.addReferencedMethod(symbols.method("test/snapshot/Child", "foo", "()V"), run);
+        result.addReferencedMethod(symbols.method("test/snapshot/Child", "bar", "()V"), run);
+        result.addReferencedClass(symbols.intern("test/snapshot/Gone"), run);
+
+        Path path = folder.getRoot().toPath().resolve("report.snapshot");
+        ReportSnapshot.write(new Report(result, ScanProfile.FAST, emptyList(), emptyList(), false), path);
+        ReportSnapshot snapshot = ReportSnapshot.open(path);
+
+        assertThat(snapshot.getScanProfile(), is(ScanProfile.FAST));
+        assertThat(snapshot.isVisited("test/snapshot/Base.foo()V"), is(true));
+        assertThat(snapshot.isVisited("test/snapshot/Child.foo()V"), is(false));
+        assertThat(snapshot.isMissing("test/snapshot/Child.foo()V"), is(false));
+        assertThat(snapshot.isMissing("test/snapshot/Child.bar()V"), is(true));
+        assertThat(snapshot.isMissing("test/snapshot/Gone"), is(true));
+        assertThat(snapshot.contains("test/snapshot/Unknown"), is(false));
+        assertThat(snapshot.getSupertypes("test/snapshot/Child"), is(singletonList("test/snapshot/Base")));
+        assertThat(snapshot.getReferencedBy("test/snapshot/Gone"), is(singletonList("test/snapshot/Caller.run()V")));
+
+        assertThat(snapshot.explainMissing("test/snapshot/Child.bar()V"), is(asList(
+                "Neither test/snapshot/Child nor its supertypes declare bar()V",
+                "   test/snapshot/Base",
+                "Referenced by 1:",
+                "   test/snapshot/Caller.run()V")));
+        assertThat(snapshot.explainMissing("test/snapshot/Child.foo()V"),
+                hasItem("foo()V is declared by the supertype test/snapshot/Base"));
+    }
+
+    @Test
+    public void missingLinksAreFlaggedWhenReferencesAreSpilled() throws IOException {
+        visitClass("a/A");
+        SpilledReferences classes = new SpilledReferences(folder.getRoot().toPath(), "classes", 16);
+        SpilledReferences methods = new SpilledReferences(folder.getRoot().toPath(), "methods", 16);
+        classes.addAll(new long[]{SpilledReferences.edge(symbols.intern("x/Missing"), symbols.intern("a/A"))}, 1);
+
+        Path path = folder.getRoot().toPath().resolve("report.snapshot");
+        ReportSnapshot.write(new Report(result, classes, methods, ScanProfile.FAST, emptyList(), emptyList(), false), path);
+        ReportSnapshot snapshot = ReportSnapshot.open(path);
+
+        assertThat(snapshot.isMissing("x/Missing"), is(true));
+        assertThat(snapshot.isMissing("a/A"), is(false));
+        assertThat(snapshot.getReferencedBy("x/Missing"), is(singletonList("a/A")));
+    }
+
+    private void visitClass(String className, String... members) {
+        int classId = symbols.intern(className);
+        result.classesVisited.add(classId);
+        for (String member : members) {
+            int paren = member.indexOf('(');
+            int memberId = symbols.member(member.substring(0, paren), member.substring(paren));
+            result.methodsVisited.add(symbols.method(classId, memberId));
+            result.addClassMethodMapping(classId, memberId);
+        }
+    }
+}
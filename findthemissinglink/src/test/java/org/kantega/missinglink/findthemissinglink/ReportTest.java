@@ -0,0 +1,38 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReportTest {
+    @Test
+    @SuppressWarnings("deprecation")
+    public void reportOfStringsFindsTheSameMissingLinks() {
+        Set<String> classesVisited = new HashSet<>(asList("a/A", "b/B"));
+        Set<String> methodsVisited = singleton("b/B.call()V");
+        Map<String, Set<String>> classesReferenced = new HashMap<>();
+        classesReferenced.put("b/B", singleton("a/A"));
+        classesReferenced.put("c/C", singleton("a/A.run()V"));
+        Map<String, Set<String>> methodsReferenced = new HashMap<>();
+        methodsReferenced.put("b/B.call()V", singleton("a/A.run()V"));
+        methodsReferenced.put("b/B.gone()V", singleton("a/A.run()V"));
+
+        Report report = new Report(classesVisited, classesReferenced, methodsVisited, methodsReferenced,
+                Collections.<String>emptySet(), emptyList(), emptyList(), true);
+
+        assertThat(report.getClassesVisited(), is(classesVisited));
+        assertThat(report.getMethodsReferenced(), is(methodsReferenced));
+        assertThat(report.getClassesMissing(), is(Collections.singletonMap("c/C", singleton("a/A.run()V"))));
+        assertThat(report.getMethodsMissing(), is(Collections.singletonMap("b/B.gone()V", singleton("a/A.run()V"))));
+    }
+}
@@ -0,0 +1,66 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReportWriterTest {
+    @Test
+    public void jsonIsWrittenInSortedOrder() throws IOException {
+        Map<String, Set<String>> references = new HashMap<>();
+        references.put("org/b/B", new HashSet<>(asList("org/z/Z.z()V", "org/y/Y.y()V")));
+        references.put("org/a/A", new HashSet<>(asList("org/x/X")));
+        Path directory = Files.createTempDirectory("missing-link-report");
+
+        new ReportWriter(directory, false).writeJson("references.json", references);
+
+        String json = new String(Files.readAllBytes(directory.resolve("references.json")), StandardCharsets.UTF_8);
+        assertThat(json.replaceAll("\\s", ""), is("{\"org/a/A\":[\"org/x/X\"],\"org/b/B\":[\"org/y/Y.y()V\",\"org/z/Z.z()V\"]}"));
+    }
+
+    @Test
+    public void symbolsAreSortedByTheirNames() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        IntObjectMap<IntSet> ids = new IntObjectMap<>();
+        IntSet referencedFrom = new IntSet();
+        referencedFrom.add(symbols.method("org/a/A$B", "b", "()V"));
+        referencedFrom.add(symbols.method("org/a/A", "a", "()V"));
+        referencedFrom.add(symbols.intern("org/a/A"));
+        ids.put(symbols.method("org/b/B", "b", "(I)V"), referencedFrom);
+        ids.put(symbols.method("org/b/B", "b", "()V"), referencedFrom);
+        Path directory = Files.createTempDirectory("missing-link-report");
+
+        new ReportWriter(directory, false).writeJson("references.json", new SymbolMap(symbols, ids));
+
+        String json = new String(Files.readAllBytes(directory.resolve("references.json")), StandardCharsets.UTF_8);
+        String sorted = "[\"org/a/A\",\"org/a/A$B.b()V\",\"org/a/A.a()V\"]";
+        assertThat(json.replaceAll("\\s", ""), is("{\"org/b/B.b()V\":" + sorted + ",\"org/b/B.b(I)V\":" + sorted + "}"));
+    }
+
+    @Test
+    public void compressedLinesAreSorted() throws IOException {
+        Path directory = Files.createTempDirectory("missing-link-report");
+        ReportWriter writer = new ReportWriter(directory, true);
+
+        writer.writeLines("classes.txt", new HashSet<>(asList("org/c/C", "org/a/A", "org/b/B")));
+
+        assertThat(writer.resolve("classes.txt"), is(directory.resolve("classes.txt.gz")));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(writer.resolve("classes.txt")))) {
+            assertThat(IOUtils.toString(in, "UTF-8"), is("org/a/A\norg/b/B\norg/c/C\n"));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SymbolTableTest {
+    @Test
+    public void sameStringGivesSameSymbol() {
+        SymbolTable symbols = new SymbolTable();
+        int first = symbols.intern("org/slf4j/Logger");
+        int second = symbols.intern(new String("org/slf4j/Logger"));
+
+        assertThat(second, is(first));
+        assertThat(symbols.intern("org/slf4j/LoggerFactory"), not(first));
+        assertThat(symbols.name(first), is("org/slf4j/Logger"));
+    }
+
+    @Test
+    public void methodIsWrittenWithOwnerNameAndDescriptor() {
+        SymbolTable symbols = new SymbolTable();
+        int method = symbols.method("org/slf4j/Logger", "info", "(Ljava/lang/String;)V");
+
+        assertThat(symbols.name(method), is("org/slf4j/Logger.info(Ljava/lang/String;)V"));
+        assertThat(symbols.name(symbols.second(method)), is("info(Ljava/lang/String;)V"));
+        assertThat(symbols.classOf(method), is(symbols.find("org/slf4j/Logger")));
+        assertThat(symbols.findMethod("org/slf4j/Logger.info(Ljava/lang/String;)V"), is(method));
+        assertThat(symbols.findMethod("org/slf4j/Logger.warn(Ljava/lang/String;)V"), is(0));
+    }
+
+    @Test
+    public void findingAPairDoesNotInternIt() {
+        SymbolTable symbols = new SymbolTable();
+        int owner = symbols.intern("org/slf4j/Logger");
+        int member = symbols.intern("info(Ljava/lang/String;)V");
+        int size = symbols.size();
+
+        assertThat(symbols.findPair(owner, member), is(0));
+        assertThat(symbols.size(), is(size));
+        int method = symbols.method(owner, member);
+        assertThat(symbols.findPair(owner, member), is(method));
+        assertThat(symbols.method(owner, member), is(method));
+    }
+
+    @Test
+    public void symbolViewsLookUpStrings() {
+        SymbolTable symbols = new SymbolTable();
+        IntSet ids = new IntSet();
+        ids.add(symbols.intern("org/slf4j/Logger"));
+        ids.add(symbols.method("org/slf4j/Logger", "info", "(Ljava/lang/String;)V"));
+        SymbolSet strings = new SymbolSet(symbols, ids);
+
+        assertThat(strings.size(), is(2));
+        assertThat(strings.contains("org/slf4j/Logger"), is(true));
+        assertThat(strings.contains("org/slf4j/Logger.info(Ljava/lang/String;)V"), is(true));
+        assertThat(strings.contains("org/slf4j/Logger.debug(Ljava/lang/String;)V"), is(false));
+        assertThat(strings.contains("org/slf4j/Marker"), is(false));
+    }
+}
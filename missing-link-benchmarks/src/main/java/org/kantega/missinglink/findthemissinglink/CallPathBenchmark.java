@@ -0,0 +1,109 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Writing the call paths of missing methods with {@link CallPathEngine}. The methods are called from layers of
+ * methods, where each method is called by {@code branching} methods of the layer above it, and some calls go
+ * back to an earlier layer to make cycles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallPathBenchmark {
+    private static final int LAYERS = 12;
+    private static final int METHODS_PER_LAYER = 500;
+
+    @Param({"2", "8"})
+    public int branching;
+
+    @Param({"100"})
+    public int missing;
+
+    private Report report;
+    private final List<String> missingMethods = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        ScanResult result = new ScanResult();
+        SymbolTable symbols = result.symbols;
+        Random random = new Random(42);
+        for (int i = 0; i < missing; i++) {
+            int method = method(symbols, "bench/missing/Missing", i);
+            missingMethods.add(symbols.name(method));
+            for (int b = 0; b < branching; b++) {
+                result.addReferencedMethod(method, method(symbols, "bench/layer0/Class", random.nextInt(METHODS_PER_LAYER)));
+            }
+        }
+        for (int layer = 0; layer < LAYERS; layer++) {
+            for (int i = 0; i < METHODS_PER_LAYER; i++) {
+                int method = method(symbols, "bench/layer" + layer + "/Class", i);
+                for (int b = 0; b < branching; b++) {
+                    int callerLayer = random.nextInt(10) == 0 ? random.nextInt(layer + 1) : layer + 1;
+                    if (callerLayer < LAYERS) {
+                        result.addReferencedMethod(method, method(symbols, "bench/layer" + callerLayer + "/Class", random.nextInt(METHODS_PER_LAYER)));
+                    }
+                }
+            }
+        }
+        report = new Report(result, ScanProfile.THOROUGH, emptyList(), emptyList(), false);
+    }
+
+    @Benchmark
+    public long writeCallPaths() throws IOException {
+        // A new engine for each operation, since an engine keeps the callers it has sorted.
+        CallPathEngine engine = new CallPathEngine(report);
+        return engine.writeCallPaths(missingMethods, new NullWriter());
+    }
+
+    private static int method(SymbolTable symbols, String className, int index) {
+        return symbols.method(className + (index % 50), "method" + index, "()V");
+    }
+
+    /**
+     * Counts what is written, so the paths are made but not kept.
+     */
+    private static class NullWriter extends Writer {
+        private long length;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            this.length += length;
+        }
+
+        @Override
+        public void write(String string) {
+            length += string.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
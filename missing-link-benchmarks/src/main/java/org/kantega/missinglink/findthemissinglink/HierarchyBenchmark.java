@@ -0,0 +1,96 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving inherited methods with {@link ClassHierarchy}, with an empty memo for each operation.
+ * <ul>
+ *     <li>DEEP: a chain of classes, each extending the one before it and declaring one method.
+ *     Every method is referenced through the class at the bottom of the chain.</li>
+ *     <li>WIDE: classes implementing many interfaces, which extend interfaces of their own.
+ *     Every interface method is referenced through one class in ten, which keeps the number of references
+ *     close to the number of classes.</li>
+ * </ul>
+ * A few methods declared nowhere are referenced too, through every class of WIDE, so the whole hierarchy is walked for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmark {
+    @Param({"DEEP", "WIDE"})
+    public String shape;
+
+    @Param({"500"})
+    public int size;
+
+    private final ScanResult result = new ScanResult();
+    private int[] methods;
+
+    @Setup
+    public void setUp() {
+        SymbolTable symbols = result.symbols;
+        IntSet referenced = new IntSet();
+        if (shape.equals("DEEP")) {
+            int bottom = symbols.intern("bench/deep/Class" + size);
+            for (int i = 1; i <= size; i++) {
+                int type = symbols.intern("bench/deep/Class" + i);
+                int member = symbols.member("method" + i, "()V");
+                result.registerInheritance(type, symbols.intern(i == 1 ? "java/lang/Object" : "bench/deep/Class" + (i - 1)));
+                result.addClassMethodMapping(type, member);
+                referenced.add(symbols.method(bottom, member));
+            }
+            for (int i = 0; i < 10; i++) {
+                referenced.add(symbols.method(bottom, symbols.member("undeclared" + i, "()V")));
+            }
+        } else {
+            int interfaces = (int) Math.sqrt(size);
+            for (int i = 0; i < interfaces; i++) {
+                int parent = symbols.intern("bench/wide/Parent" + i);
+                int child = symbols.intern("bench/wide/Interface" + i);
+                result.registerInheritance(child, parent);
+                result.addClassMethodMapping(child, symbols.member("method" + i, "()V"));
+                result.addClassMethodMapping(parent, symbols.member("parent" + i, "()V"));
+            }
+            for (int c = 0; c < size; c++) {
+                int type = symbols.intern("bench/wide/Class" + c);
+                result.registerInheritance(type, symbols.intern("java/lang/Object"));
+                for (int i = 0; i < interfaces; i++) {
+                    result.registerInheritance(type, symbols.intern("bench/wide/Interface" + i));
+                    if (c % 10 == 0) {
+                        referenced.add(symbols.method(type, symbols.member("method" + i, "()V")));
+                        referenced.add(symbols.method(type, symbols.member("parent" + i, "()V")));
+                    }
+                }
+                referenced.add(symbols.method(type, symbols.member("undeclared", "()V")));
+            }
+        }
+        methods = referenced.toArray();
+    }
+
+    @Benchmark
+    public int resolveAll() {
+        ClassHierarchy hierarchy = new ClassHierarchy(result.symbols, result.supertypesByClass, result.methodsByClass);
+        int resolvable = 0;
+        for (int method : methods) {
+            if (hierarchy.isResolvable(method)) {
+                resolvable++;
+            }
+        }
+        return resolvable;
+    }
+}
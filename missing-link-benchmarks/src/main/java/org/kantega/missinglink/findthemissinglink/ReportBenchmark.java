@@ -0,0 +1,71 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Finding the missing methods of a report, with many ignored packages. A new report is made for each
+ * operation, since a report keeps the missing methods once they are found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"50000"})
+    public int methods;
+
+    @Param({"0", "10", "1000"})
+    public int ignorePrefixes;
+
+    private final ScanResult result = new ScanResult();
+    private final List<String> ignorePackages = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        SymbolTable symbols = result.symbols;
+        Random random = new Random(42);
+        for (int i = 0; i < methods; i++) {
+            int owner = symbols.intern("bench/report/p" + (i % 100) + "/Class" + (i % 5000));
+            int method = symbols.method(owner, symbols.member("method" + i, "()V"));
+            if (i % 2 == 0) {
+                // Half of the methods are declared, the rest are missing unless they are ignored.
+                result.classesVisited.add(owner);
+                result.methodsVisited.add(method);
+                result.addClassMethodMapping(owner, symbols.second(method));
+            }
+            for (int r = 0; r < 3; r++) {
+                int caller = random.nextInt(methods);
+                int callerOwner = symbols.intern("bench/report/p" + (caller % 100) + "/Class" + (caller % 5000));
+                result.addReferencedMethod(method, symbols.method(callerOwner, symbols.member("method" + caller, "()V")));
+            }
+        }
+        for (int i = 0; i < ignorePrefixes; i++) {
+            // One in ten prefixes matches a package of the report.
+            ignorePackages.add(i % 10 == 0 ? "bench/report/p" + (i / 10 % 100) + "/" : "bench/ignored/p" + i + "/");
+        }
+    }
+
+    @Benchmark
+    public int getMethodsMissing() {
+        return new Report(result, ScanProfile.THOROUGH, ignorePackages, emptyList(), false).getMethodsMissing().size();
+    }
+}
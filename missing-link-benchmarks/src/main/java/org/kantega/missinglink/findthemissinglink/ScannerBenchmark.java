@@ -0,0 +1,97 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing throughput of {@link ClassFileVisitor}: one archive of synthetic classes is scanned per operation,
+ * and the classes and bytes parsed per second are reported next to the archives per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({"2000"})
+    public int classes;
+
+    @Param({"MAPPED", "ZIPFS"})
+    public IoBackend ioBackend;
+
+    @Param({"CLASSES", "FAST", "THOROUGH"})
+    public ScanProfile scanProfile;
+
+    @Param({"1", "4"})
+    public int archiveParallelism;
+
+    private Path directory;
+    private String jar;
+    private long bytes;
+    private ClassFileVisitor visitor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, URISyntaxException {
+        directory = Files.createTempDirectory("missing-link-benchmark");
+        byte[][] classFiles = SyntheticClasses.generate(classes, 8, 42);
+        for (byte[] classFile : classFiles) {
+            bytes += classFile.length;
+        }
+        Path path = directory.resolve("synthetic.jar");
+        SyntheticClasses.writeJar(path, classFiles);
+        jar = path.toString();
+        visitor = new ClassFileVisitor();
+        visitor.setIoBackend(ioBackend);
+        visitor.setScanProfile(scanProfile);
+        visitor.setArchiveParallelism(archiveParallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("synthetic.jar"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public ScanResult scanArchive(Throughput throughput) {
+        ScanResult result = visitor.indexArchive(jar);
+        throughput.classes += classes;
+        throughput.bytes += bytes;
+        return result;
+    }
+
+    /**
+     * Classes and bytes parsed, reported by JMH per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long classes;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+            bytes = 0;
+        }
+    }
+}
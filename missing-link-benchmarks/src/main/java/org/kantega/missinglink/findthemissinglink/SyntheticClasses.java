@@ -0,0 +1,112 @@
+package org.kantega.missinglink.findthemissinglink;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates class files for the benchmarks, so they run offline and measure the same classes every time.
+ * The classes are made from a fixed seed, and look like ordinary compiled code: each method creates objects,
+ * calls methods on other classes and keeps them in local variables, with debug information.
+ */
+final class SyntheticClasses {
+    static final String PACKAGE = "bench/synthetic/";
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * @return the name of class {@code index}. Classes are spread over ten packages.
+     */
+    static String className(int index) {
+        return PACKAGE + "p" + (index % 10) + "/Class" + index;
+    }
+
+    /**
+     * @return {@code count} classes, each declaring {@code methodsPerClass} methods that call methods of
+     * other classes in the set.
+     */
+    static byte[][] generate(int count, int methodsPerClass, long seed) {
+        Random random = new Random(seed);
+        byte[][] classes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            classes[i] = classFile(i, count, methodsPerClass, random);
+        }
+        return classes;
+    }
+
+    /**
+     * Writes {@code classes} to a jar, with the file names given by {@link #className(int)}.
+     */
+    static void writeJar(Path jar, byte[][] classes) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < classes.length; i++) {
+                out.putNextEntry(new JarEntry(className(i) + ".class"));
+                out.write(classes[i]);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static byte[] classFile(int index, int count, int methodsPerClass, Random random) {
+        String name = className(index);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", new String[]{"java/io/Serializable"});
+        cw.visitSource("Class" + index + ".java", null);
+        cw.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null).visitEnd();
+
+        MethodVisitor constructor = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        for (int m = 0; m < methodsPerClass; m++) {
+            String callee = className(random.nextInt(count));
+            int calleeMethod = random.nextInt(methodsPerClass);
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + m, "(I)Ljava/lang/String;", null, null);
+            Label start = new Label();
+            Label end = new Label();
+            mv.visitCode();
+            mv.visitLabel(start);
+            mv.visitLineNumber(10 + m, start);
+            mv.visitTypeInsn(Opcodes.NEW, callee);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, callee, "<init>", "()V", false);
+            mv.visitVarInsn(Opcodes.ASTORE, 2);
+            mv.visitTypeInsn(Opcodes.NEW, "java/lang/StringBuilder");
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V", false);
+            mv.visitVarInsn(Opcodes.ASTORE, 3);
+            mv.visitVarInsn(Opcodes.ALOAD, 3);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, name, "name", "Ljava/lang/String;");
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, callee, "method" + calleeMethod, "(I)Ljava/lang/String;", false);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitLabel(end);
+            mv.visitLocalVariable("this", "L" + name + ";", null, start, end, 0);
+            mv.visitLocalVariable("depth", "I", null, start, end, 1);
+            mv.visitLocalVariable("other", "L" + callee + ";", null, start, end, 2);
+            mv.visitLocalVariable("builder", "Ljava/lang/StringBuilder;", null, start, end, 3);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,253 @@
+package org.kantega.missinglink.missinglinkcli;
+
+import org.kantega.missinglink.findthemissinglink.ClassFileVisitor;
+import org.kantega.missinglink.findthemissinglink.IndexCache;
+import org.kantega.missinglink.findthemissinglink.IoBackend;
+import org.kantega.missinglink.findthemissinglink.Report;
+import org.kantega.missinglink.findthemissinglink.ReportFiles;
+import org.kantega.missinglink.findthemissinglink.ScanMetrics;
+import org.kantega.missinglink.findthemissinglink.ScanProfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the missing links of a classpath from the command line, and writes the same report files as the
+ * Maven plugin:
+ * <pre>
+ * java -jar missing-link.jar --report-directory target/missing-link app.war
+ * </pre>
+ * Exits with 1 if links are missing and {@code --fail-on-missing} is given, and with 2 if the arguments are wrong.
+ */
+public final class FindTheMissingLinks {
+    private static final int MISSING = 1;
+    private static final int USAGE = 2;
+
+    private FindTheMissingLinks() {
+    }
+
+    public static void main(String[] args) throws IOException, URISyntaxException {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * @return the exit status.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) throws IOException, URISyntaxException {
+        List<String> paths = new ArrayList<>();
+        Path reportDirectory = Paths.get("missing-link");
+        List<String> ignoredPackages = new ArrayList<>(Arrays.asList("javax/servlet", "javax/el", "javax/portlet"));
+        List<String> ignoreReferencesInPackages = new ArrayList<>();
+        boolean ignoreAnnotationReferences = true;
+        Path indexCacheDirectory = Paths.get(System.getProperty("user.home"), ".m2", "missing-link", "index");
+        List<String> entryPoints = new ArrayList<>();
+        boolean failOnMissing = false;
+        boolean verbose = false;
+        ClassFileVisitorSettings settings = new ClassFileVisitorSettings();
+        ReportSettings reportSettings = new ReportSettings();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--classpath":
+                    case "-cp":
+                        for (String path : value(args, ++i, arg).split(File.pathSeparator)) {
+                            if (!path.isEmpty()) {
+                                paths.add(path);
+                            }
+                        }
+                        break;
+                    case "--report-directory":
+                        reportDirectory = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--ignore-package":
+                        ignoredPackages.add(value(args, ++i, arg).replace('.', '/'));
+                        break;
+                    case "--ignore-references-in":
+                        ignoreReferencesInPackages.add(value(args, ++i, arg).replace('.', '/'));
+                        break;
+                    case "--check-container-apis":
+                        ignoredPackages.removeAll(Arrays.asList("javax/servlet", "javax/el", "javax/portlet"));
+                        break;
+                    case "--check-annotations":
+                        ignoreAnnotationReferences = false;
+                        break;
+                    case "--scan-profile":
+                        settings.scanProfile = ScanProfile.valueOf(value(args, ++i, arg));
+                        break;
+                    case "--io-backend":
+                        settings.ioBackend = IoBackend.valueOf(value(args, ++i, arg));
+                        break;
+                    case "--parallelism":
+                        settings.parallelism = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--archive-parallelism":
+                        settings.archiveParallelism = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--index-cache":
+                        indexCacheDirectory = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--no-index-cache":
+                        indexCacheDirectory = null;
+                        break;
+                    case "--reachability":
+                        settings.reachability = true;
+                        break;
+                    case "--entry-point":
+                        entryPoints.add(value(args, ++i, arg));
+                        break;
+                    case "--reference-memory-budget":
+                        settings.referenceMemoryBudget = Long.parseLong(value(args, ++i, arg)) * 1024 * 1024;
+                        break;
+                    case "--spill-directory":
+                        settings.spillDirectory = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--write-seen-and-visited":
+                        reportSettings.writeSeenAndVisited = true;
+                        break;
+                    case "--write-snapshot":
+                        reportSettings.writeSnapshot = true;
+                        break;
+                    case "--compress-reports":
+                        reportSettings.compress = true;
+                        break;
+                    case "--fail-on-missing":
+                        failOnMissing = true;
+                        break;
+                    case "--verbose":
+                        verbose = true;
+                        break;
+                    case "--help":
+                        usage(out);
+                        return 0;
+                    default:
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        }
+                        paths.add(arg);
+                }
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("No archives or directories to analyze");
+            }
+            for (String path : paths) {
+                if (!Files.exists(Paths.get(path))) {
+                    throw new IllegalArgumentException(path + " does not exist");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            usage(err);
+            return USAGE;
+        }
+
+        // Read by the logger of the analysis when it is first used.
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", verbose ? "info" : "warn");
+        ClassFileVisitor classFileVisitor = new ClassFileVisitor(indexCacheDirectory == null ? null : new IndexCache(indexCacheDirectory));
+        settings.apply(classFileVisitor);
+        classFileVisitor.setEntryPoints(entryPoints);
+        Report report = classFileVisitor.generateReportForJar(paths, ignoredPackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+        ScanMetrics metrics = classFileVisitor.getMetrics();
+
+        long start = System.nanoTime();
+        Map<String, Set<String>> classesMissing = report.getClassesMissing();
+        Map<String, Set<String>> methodsMissing = report.getMethodsMissing();
+        metrics.recordPhase("missingLinks", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        ReportFiles reportFiles = new ReportFiles(reportDirectory, reportSettings.compress);
+        reportFiles.setWriteSeenAndVisited(reportSettings.writeSeenAndVisited);
+        reportFiles.setWriteSnapshot(reportSettings.writeSnapshot);
+        reportFiles.write(report, classesMissing, methodsMissing, ignoredPackages);
+        metrics.recordPhase("report", System.nanoTime() - start);
+        reportFiles.writeMetrics(metrics);
+
+        out.println(classesMissing.isEmpty() ? "No missing classes" : classesMissing.size() + " missing classes");
+        if (report.getScanProfile() == ScanProfile.CLASSES) {
+            out.println("Methods are not checked with the CLASSES scan profile");
+        } else {
+            out.println(methodsMissing.isEmpty() ? "No missing methods" : methodsMissing.size() + " missing methods");
+        }
+        out.println("Reports can be found in " + reportDirectory.toAbsolutePath());
+        if (verbose) {
+            metrics.getSummary(5).forEach(line -> out.println("   " + line));
+        }
+        boolean missing = !classesMissing.isEmpty() || !methodsMissing.isEmpty();
+        return failOnMissing && missing ? MISSING : 0;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: missing-link [options] <archive or directory>...");
+        out.println("Options:");
+        out.println("   --classpath, -cp <paths>           archives and directories, separated by " + File.pathSeparator);
+        out.println("   --report-directory <directory>     where the report files are written (default: missing-link)");
+        out.println("   --ignore-package <package>         classes and methods in the package are not reported");
+        out.println("   --ignore-references-in <package>   what is referenced in the package is not reported");
+        out.println("   --check-container-apis             report javax.servlet, javax.el and javax.portlet too");
+        out.println("   --check-annotations                report missing annotations too");
+        out.println("   --scan-profile <profile>           FAST, THOROUGH or CLASSES (default: THOROUGH)");
+        out.println("   --io-backend <backend>             MAPPED or ZIPFS (default: MAPPED)");
+        out.println("   --parallelism <threads>            archives scanned in parallel, 0 for one per processor (default: 0)");
+        out.println("   --archive-parallelism <threads>    threads parsing one large archive, 0 for one per processor (default: 0)");
+        out.println("   --index-cache <directory>          where archive indexes are cached (default: ~/.m2/missing-link/index)");
+        out.println("   --no-index-cache                   scan every archive");
+        out.println("   --reachability                     only check what can be reached from the roots");
+        out.println("   --entry-point <class>              a root for --reachability, or a package ending with .*");
+        out.println("   --reference-memory-budget <MB>     spill references to disk beyond this many megabytes");
+        out.println("   --spill-directory <directory>      where references are spilled (default: the temporary directory)");
+        out.println("   --write-seen-and-visited           also write everything visited and referenced, and call paths");
+        out.println("   --write-snapshot                   also write report.snapshot");
+        out.println("   --compress-reports                 gzip the JSON and text files");
+        out.println("   --fail-on-missing                  exit with 1 if classes or methods are missing");
+        out.println("   --verbose                          log progress and the time spent");
+    }
+
+    /**
+     * How the classpath is scanned. Archives are scanned with every processor by default, unlike in the
+     * Maven plugin, which shares the machine with the rest of the build.
+     */
+    private static final class ClassFileVisitorSettings {
+        ScanProfile scanProfile = ScanProfile.THOROUGH;
+        IoBackend ioBackend = IoBackend.MAPPED;
+        int parallelism;
+        int archiveParallelism;
+        boolean reachability;
+        long referenceMemoryBudget;
+        Path spillDirectory;
+
+        void apply(ClassFileVisitor visitor) {
+            visitor.setScanProfile(scanProfile);
+            visitor.setIoBackend(ioBackend);
+            visitor.setParallelism(parallelism);
+            visitor.setArchiveParallelism(archiveParallelism);
+            visitor.setReachability(reachability);
+            visitor.setReferenceMemoryBudget(referenceMemoryBudget);
+            if (spillDirectory != null) {
+                visitor.setSpillDirectory(spillDirectory);
+            }
+        }
+    }
+
+    private static final class ReportSettings {
+        boolean writeSeenAndVisited;
+        boolean writeSnapshot;
+        boolean compress;
+    }
+}
@@ -0,0 +1,72 @@
+package org.kantega.missinglink.missinglinkcli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kantega.missinglink.findthemissinglink.ClassFileVisitor;
+import org.kantega.missinglink.findthemissinglink.ReportFiles;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FindTheMissingLinksTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void missingLinksFailTheRunAndAreReportedLikeInTheMavenPlugin() throws Exception {
+        Path reports = folder.newFolder("reports").toPath();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // The classes of the analysis reference ASM and SLF4J, which are not on the classpath.
+        int status = FindTheMissingLinks.run(new String[]{
+                "--no-index-cache", "--report-directory", reports.toString(), "--fail-on-missing",
+                location(ClassFileVisitor.class)}, new PrintStream(out, true, "UTF-8"), System.err);
+
+        assertThat(status, is(1));
+        String report = new String(Files.readAllBytes(reports.resolve(ReportFiles.MISSING_LINKS_REPORT)), StandardCharsets.UTF_8);
+        assertThat(report, containsString("org/objectweb/asm/ClassReader"));
+        assertThat(Files.exists(reports.resolve(ReportFiles.MISSING_CLASS_REFERENCES)), is(true));
+        assertThat(Files.exists(reports.resolve(ReportFiles.METRICS)), is(true));
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), containsString("missing classes"));
+    }
+
+    @Test
+    public void runSucceedsWhenTheClasspathIsComplete() throws Exception {
+        Path reports = folder.newFolder("reports").toPath();
+        String classpath = location(ClassReader.class) + File.pathSeparator + location(Logger.class);
+
+        // SLF4J finds its binding in org.slf4j.impl, which only some bindings implement fully.
+        int status = FindTheMissingLinks.run(new String[]{
+                "--no-index-cache", "--report-directory", reports.toString(), "--fail-on-missing",
+                "--ignore-package", "com.fasterxml.jackson", "--ignore-package", "org.slf4j.impl", "--classpath", classpath,
+                location(ClassFileVisitor.class)}, System.out, System.err);
+
+        assertThat(status, is(0));
+    }
+
+    @Test
+    public void unknownOptionIsAUsageError() throws Exception {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int status = FindTheMissingLinks.run(new String[]{"--no-such-option"}, System.out, new PrintStream(err, true, "UTF-8"));
+
+        assertThat(status, is(2));
+        assertThat(new String(err.toByteArray(), StandardCharsets.UTF_8), containsString("Usage: missing-link"));
+    }
+
+    private static String location(Class<?> type) throws Exception {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+}
@@ -0,0 +1,190 @@
+package org.kantega.missinglink.missinglinkmavenplugin;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kantega.missinglink.findthemissinglink.ClassFileVisitor;
+import org.kantega.missinglink.findthemissinglink.IoBackend;
+import org.kantega.missinglink.findthemissinglink.ReportSnapshot;
+import org.kantega.missinglink.findthemissinglink.ScanProfile;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the plugin on a large generated classpath, and checks that it finds exactly the missing classes and methods
+ * planted in it, within a heap and time budget. The size of the classpath and the budgets are set with system
+ * properties, for instance {@code mvn test -Dscale.jars=2000 -Dscale.maxHeapMb=2048}:
+ * <ul>
+ *     <li>{@code scale.jars} (default 500) and {@code scale.classesPerJar} (default 20)</li>
+ *     <li>{@code scale.hierarchyDepth} (default 5) - the length of the class chains in each jar</li>
+ *     <li>{@code scale.maxHeapMb} (default 512) - the most the heap may grow while the plugin runs</li>
+ *     <li>{@code scale.maxSeconds} (default 60) - the longest the plugin may run</li>
+ * </ul>
+ * The mojo runs in this JVM, so its heap can be measured. The platform classes are indexed before it starts.
+ */
+public class ScaleTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void largeClasspathIsAnalyzedWithinBudget() throws Exception {
+        int jars = Integer.getInteger("scale.jars", 500);
+        int classesPerJar = Integer.getInteger("scale.classesPerJar", 20);
+        int hierarchyDepth = Integer.getInteger("scale.hierarchyDepth", 5);
+        long maxHeapMb = Long.getLong("scale.maxHeapMb", 512);
+        long maxSeconds = Long.getLong("scale.maxSeconds", 60);
+
+        SyntheticClasspath classpath = new SyntheticClasspath(jars, classesPerJar, hierarchyDepth, 50);
+        List<Path> paths = classpath.write(folder.newFolder("classpath").toPath());
+        File reportDirectory = folder.newFolder("missing-link");
+        FindTheMissingLinksMojo mojo = mojo(paths, reportDirectory);
+        // Loads the classes of the analysis, and lists the platform classes, which are kept for the JVM.
+        new ClassFileVisitor().generateReportForJar(Collections.<String>emptyList());
+
+        System.gc();
+        long heapBefore = heapUsed();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        try {
+            mojo.execute();
+            fail("The planted missing links should fail the build");
+        } catch (MojoFailureException expected) {
+            // failOnMissing is set.
+        }
+        long seconds = (System.nanoTime() - start) / 1_000_000_000L;
+        long heapMb = (peakHeap() - heapBefore) / (1024 * 1024);
+
+        File report = new File(reportDirectory, FindTheMissingLinksMojo.MISSING_LINKS_REPORT);
+        assertThat(section(report, "Classes missing"), is(classpath.getMissingClasses()));
+        assertThat(section(report, "Methods missing"), is(classpath.getMissingMethods()));
+        ReportSnapshot snapshot = ReportSnapshot.open(new File(reportDirectory, FindTheMissingLinksMojo.REPORT_SNAPSHOT).toPath());
+        for (String missing : classpath.getMissingMethods()) {
+            assertThat(missing, snapshot.isMissing(missing), is(true));
+        }
+        String analyzed = "Analyzed " + classpath.getClassCount() + " classes in " + jars + " jars. ";
+        assertTrue(analyzed + "Took " + seconds + " s, the budget is " + maxSeconds + " s", seconds <= maxSeconds);
+        assertTrue(analyzed + "The heap grew by " + heapMb + " MB, the budget is " + maxHeapMb + " MB", heapMb <= maxHeapMb);
+    }
+
+    private FindTheMissingLinksMojo mojo(List<Path> paths, File reportDirectory) throws Exception {
+        MavenProject project = new MavenProject();
+        Build build = new Build();
+        build.setOutputDirectory(new File(folder.getRoot(), "classes").getAbsolutePath());
+        project.setBuild(build);
+        Set<Artifact> artifacts = new LinkedHashSet<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString().replace(".jar", "");
+            Artifact artifact = new DefaultArtifact("scale", name, "1.0", Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+            artifact.setFile(path.toFile());
+            artifacts.add(artifact);
+        }
+        project.setArtifacts(artifacts);
+
+        // Every parameter is set to its default value, as Maven would, except the report options the test reads,
+        // failOnMissing, and the index cache, which is turned off so earlier builds do not help. The session is
+        // left out, so the index is not shared in the build.
+        FindTheMissingLinksMojo mojo = new FindTheMissingLinksMojo();
+        configure(mojo, "project", project);
+        configure(mojo, "failOnMissing", true);
+        configure(mojo, "ignoreServletApi", true);
+        configure(mojo, "ignoreELApi", true);
+        configure(mojo, "ignorePortletApi", true);
+        configure(mojo, "ignoreAnnotationReferences", true);
+        configure(mojo, "reportDirectory", reportDirectory);
+        configure(mojo, "writeSeenAndVisitedToFile", true);
+        configure(mojo, "parallelism", 1);
+        configure(mojo, "archiveParallelism", 1);
+        configure(mojo, "useIndexCache", false);
+        configure(mojo, "indexCacheDirectory", new File(folder.getRoot(), "index"));
+        configure(mojo, "ioBackend", IoBackend.MAPPED);
+        configure(mojo, "scanProfile", ScanProfile.THOROUGH);
+        configure(mojo, "callPathMaxDepth", 20);
+        configure(mojo, "callPathsPerMethod", 10);
+        configure(mojo, "compressReports", false);
+        configure(mojo, "includeOutputDirectory", true);
+        configure(mojo, "incremental", true);
+        configure(mojo, "writeSnapshot", true);
+        configure(mojo, "shareIndexInBuild", true);
+        configure(mojo, "reachability", false);
+        configure(mojo, "referenceMemoryBudget", 0);
+        configure(mojo, "spillDirectory", new File(folder.getRoot(), "missing-link-spill"));
+        return mojo;
+    }
+
+    private static void configure(Object mojo, String parameter, Object value) throws ReflectiveOperationException {
+        Field field = mojo.getClass().getDeclaredField(parameter);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    /**
+     * @return the classes or methods listed under {@code heading} in missing-links-report.txt.
+     */
+    private static Set<String> section(File report, String heading) throws Exception {
+        Set<String> names = new TreeSet<>();
+        boolean inSection = false;
+        for (String line : Files.readAllLines(report.toPath())) {
+            if (line.startsWith(heading)) {
+                inSection = true;
+            } else if (inSection && line.startsWith("   ")) {
+                names.add(line.trim());
+            } else if (inSection) {
+                break;
+            }
+        }
+        return names;
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the peak usage of each heap pool, which is at least the peak usage of the heap.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,173 @@
+package org.kantega.missinglink.missinglinkmavenplugin;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Writes a classpath of generated jars, with hierarchies that span jars and with missing classes and
+ * methods planted at known places.
+ * <p>
+ * Jar {@code j} holds the classes {@code scale/jarJ/ClassK} and the interface {@code scale/jarJ/Service}.
+ * Classes form chains of {@code hierarchyDepth} classes, and the first class of each chain extends the same
+ * class in the jar before, so the hierarchy grows deeper with every jar. Each class implements the interface
+ * of its jar, and its method calls an inherited method through itself, a method of a class in the jar before,
+ * and the interface method, all of which are found.
+ * <p>
+ * In every {@code plantEvery}th jar, one class references a class that is not on the classpath,
+ * and another calls a method that the class in the jar before does not declare.
+ */
+class SyntheticClasspath {
+    private final int jars;
+    private final int classesPerJar;
+    private final int hierarchyDepth;
+    private final int plantEvery;
+    private final Set<String> missingClasses = new TreeSet<>();
+    private final Set<String> missingMethods = new TreeSet<>();
+
+    SyntheticClasspath(int jars, int classesPerJar, int hierarchyDepth, int plantEvery) {
+        this.jars = jars;
+        this.classesPerJar = classesPerJar;
+        this.hierarchyDepth = hierarchyDepth;
+        this.plantEvery = plantEvery;
+    }
+
+    /**
+     * @return the jars written to {@code directory}, in order.
+     */
+    List<Path> write(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int j = 0; j < jars; j++) {
+            Path jar = directory.resolve("synthetic-" + j + ".jar");
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+                add(out, service(j), serviceClass(j));
+                for (int k = 0; k < classesPerJar; k++) {
+                    add(out, className(j, k), classFile(j, k));
+                }
+            }
+            paths.add(jar);
+        }
+        return paths;
+    }
+
+    /**
+     * @return the classes that are missing, known once the classpath has been written.
+     */
+    Set<String> getMissingClasses() {
+        return missingClasses;
+    }
+
+    /**
+     * @return the methods that are missing, including the methods of the missing classes.
+     */
+    Set<String> getMissingMethods() {
+        return missingMethods;
+    }
+
+    int getClassCount() {
+        return jars * (classesPerJar + 1);
+    }
+
+    private static String className(int jar, int index) {
+        return "scale/jar" + jar + "/Class" + index;
+    }
+
+    private static String service(int jar) {
+        return "scale/jar" + jar + "/Service";
+    }
+
+    private static String methodName(int jar, int index) {
+        return "jar" + jar + "Method" + index;
+    }
+
+    private String superName(int jar, int index) {
+        if (index % hierarchyDepth != 0) {
+            return className(jar, index - 1);
+        }
+        return jar == 0 ? "java/lang/Object" : className(jar - 1, index);
+    }
+
+    private byte[] serviceClass(int jar) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, service(jar), null, "java/lang/Object", null);
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "serve", "()V", null, null).visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private byte[] classFile(int jar, int index) {
+        String name = className(jar, index);
+        String superName = superName(jar, index);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, new String[]{service(jar)});
+
+        MethodVisitor constructor = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor serve = cw.visitMethod(Opcodes.ACC_PUBLIC, "serve", "()V", null, null);
+        serve.visitCode();
+        serve.visitInsn(Opcodes.RETURN);
+        serve.visitMaxs(0, 0);
+        serve.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, methodName(jar, index), "()V", null, null);
+        mv.visitCode();
+        if (!superName.equals("java/lang/Object")) {
+            // Declared by the superclass, and referenced through this class.
+            int superJar = index % hierarchyDepth == 0 ? jar - 1 : jar;
+            int superIndex = index % hierarchyDepth == 0 ? index : index - 1;
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, methodName(superJar, superIndex), "()V", false);
+        }
+        if (jar > 0) {
+            String other = className(jar - 1, (index * 7) % classesPerJar);
+            mv.visitTypeInsn(Opcodes.NEW, other);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, other, "<init>", "()V", false);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, other, methodName(jar - 1, (index * 7) % classesPerJar), "()V", false);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, service(jar), "serve", "()V", true);
+
+        if (jar % plantEvery == plantEvery - 1 && index == 0) {
+            String removed = "scale/removed/Removed" + jar;
+            mv.visitTypeInsn(Opcodes.NEW, removed);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, removed, "<init>", "()V", false);
+            mv.visitInsn(Opcodes.POP);
+            missingClasses.add(removed);
+            missingMethods.add(removed + ".<init>()V");
+        }
+        if (jar % plantEvery == plantEvery - 1 && index == 1) {
+            String other = className(jar - 1, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, other, "removedIn" + jar, "()V", false);
+            missingMethods.add(other + ".removedIn" + jar + "()V");
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void add(JarOutputStream out, String className, byte[] classFile) throws IOException {
+        out.putNextEntry(new JarEntry(className + ".class"));
+        out.write(classFile);
+        out.closeEntry();
+    }
+}
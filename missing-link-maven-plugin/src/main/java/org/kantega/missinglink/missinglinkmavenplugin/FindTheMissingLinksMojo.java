@@ -1,20 +1,32 @@
 package org.kantega.missinglink.missinglinkmavenplugin;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.kantega.missinglink.findthemissinglink.CallTreeReport;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.SessionData;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.kantega.missinglink.findthemissinglink.ClassFileVisitor;
+import org.kantega.missinglink.findthemissinglink.IndexCache;
+import org.kantega.missinglink.findthemissinglink.IoBackend;
 import org.kantega.missinglink.findthemissinglink.Report;
+import org.kantega.missinglink.findthemissinglink.ReportFiles;
+import org.kantega.missinglink.findthemissinglink.ScanMetrics;
+import org.kantega.missinglink.findthemissinglink.ScanProfile;
+import org.kantega.missinglink.findthemissinglink.SessionIndex;
+import org.kantega.missinglink.findthemissinglink.UpgradeDiff;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -25,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,23 +46,36 @@ import java.util.stream.Collectors;
 @Mojo( name = "findmissinglinks",
         defaultPhase = LifecyclePhase.PROCESS_CLASSES,
         requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
-        requiresDependencyCollection = ResolutionScope.COMPILE_PLUS_RUNTIME
+        requiresDependencyCollection = ResolutionScope.COMPILE_PLUS_RUNTIME,
+        threadSafe = true
 )
 public class FindTheMissingLinksMojo extends AbstractMojo {
 
-    public static final String MISSING_LINKS_REPORT = "missing-links-report.txt";
-    public static final String MISSING_CLASS_REFERENCES = "missing-classes.json";
-    public static final String MISSING_METHOD_REFERENCES = "missing-methods.json";
+    public static final String MISSING_LINKS_REPORT = ReportFiles.MISSING_LINKS_REPORT;
+    public static final String MISSING_CLASS_REFERENCES = ReportFiles.MISSING_CLASS_REFERENCES;
+    public static final String MISSING_METHOD_REFERENCES = ReportFiles.MISSING_METHOD_REFERENCES;
 
-    public static final String METHOD_REFERENCED = "methods-referenced.json";
-    public static final String CLASSES_REFERENCED = "classes-referenced.json";
-    public static final String METHOD_VISITED = "methods-visited.txt";
-    public static final String CLASSES_VISITED = "classes-visited.txt";
-    public static final String METHOD_CALL_TREE = "call-paths.txt";
+    public static final String METHOD_REFERENCED = ReportFiles.METHOD_REFERENCED;
+    public static final String CLASSES_REFERENCED = ReportFiles.CLASSES_REFERENCED;
+    public static final String METHOD_VISITED = ReportFiles.METHOD_VISITED;
+    public static final String CLASSES_VISITED = ReportFiles.CLASSES_VISITED;
+    public static final String METHOD_CALL_TREE = ReportFiles.METHOD_CALL_TREE;
+    public static final String REPORT_SNAPSHOT = ReportFiles.REPORT_SNAPSHOT;
+    public static final String METRICS = ReportFiles.METRICS;
+    public static final String UPGRADE_DIFF = "upgrade-diff.txt";
 
     @Parameter( defaultValue = "${project}", readonly = true )
     private MavenProject project;
 
+    @Parameter( defaultValue = "${session}", readonly = true )
+    private MavenSession session;
+
+    @Parameter( defaultValue = "${project.remoteProjectRepositories}", readonly = true )
+    private List<RemoteRepository> remoteRepositories;
+
+    @Component
+    private RepositorySystem repositorySystem;
+
     /**
      * If set to true the build will fail if there are missing classes and methods.
      * Default value is false.
@@ -120,28 +146,238 @@ public class FindTheMissingLinksMojo extends AbstractMojo {
     @Parameter
     private List<String> ignoreReferencesInPackages = Collections.emptyList();
 
+    /**
+     * Number of dependencies that are scanned in parallel.
+     * Values less than 1 means one thread per available processor.
+     * Default value is 1.
+     */
+    @Parameter(defaultValue = "1")
+    private int parallelism;
+
+    /**
+     * Number of threads parsing the classes of a dependency of at least 1 MB, like a fat jar, while the classes
+     * are read from it. Up to {@code parallelism} times this number of threads may parse classes at once.
+     * Values less than 1 means one thread per available processor.
+     * Default value is 1.
+     */
+    @Parameter(defaultValue = "1")
+    private int archiveParallelism;
+
+    /**
+     * If set to true, what is found in each dependency is cached in {@code indexCacheDirectory},
+     * and dependencies that have not changed since the last build are read from the cache instead of being scanned.
+     * Default value is true.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean useIndexCache;
+
+    /**
+     * Directory where the index of each scanned dependency is cached between builds, together with the class files
+     * of the run-time image of the JDK.
+     */
+    @Parameter(defaultValue = "${user.home}/.m2/missing-link/index")
+    private File indexCacheDirectory;
+
+    /**
+     * How dependencies are read. MAPPED memory-maps each archive and reads its entries directly,
+     * ZIPFS opens it as a zip file system.
+     * Default value is MAPPED.
+     */
+    @Parameter(defaultValue = "MAPPED")
+    private IoBackend ioBackend;
+
+    /**
+     * How much of each class file is parsed. FAST skips debug information and stack map frames, and only checks
+     * references made by the bytecode. THOROUGH also checks local variable types from the debug information.
+     * CLASSES only checks that the classes referenced exist, reading them from the constant pool without parsing
+     * the code, and only lists the names of the platform classes.
+     * Default value is THOROUGH.
+     */
+    @Parameter(defaultValue = "THOROUGH")
+    private ScanProfile scanProfile;
+
+    /**
+     * The largest number of callers in a path written to call-paths.txt. Longer paths are cut.
+     * Default value is 20.
+     */
+    @Parameter(defaultValue = "20")
+    private int callPathMaxDepth;
+
+    /**
+     * The largest number of paths written to call-paths.txt for each missing method. The shortest paths are written.
+     * Default value is 10.
+     */
+    @Parameter(defaultValue = "10")
+    private int callPathsPerMethod;
+
+    /**
+     * If set to true, the JSON and text files in the report directory are gzip compressed, and «.gz» is added
+     * to their names. missing-links-report.txt is never compressed.
+     * Default value is false.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean compressReports;
+
+    /**
+     * If set to true, the classes of the project itself, in its output directory, are analyzed together with
+     * the dependencies.
+     * Default value is true.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean includeOutputDirectory;
+
+    /**
+     * If set to true, the state of each class file in the output directory is kept in {@code indexCacheDirectory},
+     * and only class files that have changed since the last build are parsed again.
+     * Has no effect unless {@code useIndexCache} is true.
+     * Default value is true.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Deployable archives, like wars, ears and Spring Boot jars, to analyze instead of the project dependencies.
+     * The libraries packaged inside them are analyzed too, without being extracted.
+     */
+    @Parameter
+    private List<File> archives = Collections.emptyList();
+
+    /**
+     * If set to true, the whole report is written to report.snapshot in the report directory, a binary file that
+     * can be queried with SnapshotQuery without analyzing the project again.
+     * Default value is false.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean writeSnapshot;
+
+    /**
+     * If set to true, what is found in each dependency is kept in memory for the rest of the build, and shared with
+     * the other modules of the reactor, so a dependency of several modules is only scanned once.
+     * Default value is true.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean shareIndexInBuild;
+
+    /**
+     * If set to true, only the classes reachable from the project's own classes, from the classes of the
+     * {@code archives} in WEB-INF/classes or BOOT-INF/classes, and from {@code entryPoints} are parsed.
+     * Missing links are only reported for code that can be reached.
+     * Default value is false.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean reachability;
+
+    /**
+     * Classes where reachability analysis starts, in addition to the project's own classes. A package name
+     * ending with «.*» includes every class in the package and its subpackages.
+     * Both «/» and «.» may be used as package separator.
+     */
+    @Parameter
+    private List<String> entryPoints = Collections.emptyList();
+
+    /**
+     * Dependency upgrades to try, like «commons-pool:commons-pool:1.6». Each upgrade is compared with the project's
+     * dependencies on its own, and the classes and methods that would go missing or be resolved are written to
+     * upgrade-diff.txt. An upgrade may swap several dependencies at once, separated by «,». A dependency the project
+     * does not have is added. Only the dependency itself is swapped, not its transitive dependencies.
+     * Upgrades never fail the build.
+     */
+    @Parameter
+    private List<String> upgrades = Collections.emptyList();
+
+    /**
+     * Megabytes of references held in memory before they are sorted and spilled to {@code spillDirectory}.
+     * The missing links are then found by merging the spilled references, so the heap needed for references
+     * does not grow with the classpath, or with the largest dependency. What the classes declare is still kept in
+     * memory. Dependencies are not shared with other modules of the build, nor written to the index cache, in this
+     * mode, and the referenced classes and methods are not kept
+     * for writeSeenAndVisitedToFile and writeSnapshot. Not used with reachability or upgrades.
+     * Default value is 0, which keeps every reference in memory.
+     */
+    @Parameter(defaultValue = "0")
+    private int referenceMemoryBudget;
+
+    /**
+     * Directory where references are spilled when {@code referenceMemoryBudget} is set. The files are deleted
+     * when the missing links have been found.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/missing-link-spill")
+    private File spillDirectory;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         Log log = getLog();
         log.info("Running Find the missing link Maven plugin");
 
         try {
-            Set<Artifact> artifacts = project.getArtifacts();
-            List<String> paths = new ArrayList<>(artifacts.size());
-            for (Artifact dependencyArtifact : artifacts) {
-                    File file = dependencyArtifact.getFile();
-                    addIfJarOrWar(paths, file);
+            List<String> paths = new ArrayList<>();
+            Map<String, String> pathsByDependency = new LinkedHashMap<>();
+            if (archives.isEmpty()) {
+                File outputDirectory = new File(project.getBuild().getOutputDirectory());
+                if (includeOutputDirectory && outputDirectory.isDirectory()) {
+                    paths.add(outputDirectory.getAbsolutePath());
+                }
+                for (Artifact dependencyArtifact : project.getArtifacts()) {
+                        File file = dependencyArtifact.getFile();
+                        if (addIfArchiveOrDirectory(paths, file)) {
+                            pathsByDependency.put(dependencyArtifact.getGroupId() + ":" + dependencyArtifact.getArtifactId(), file.getAbsolutePath());
+                        }
+                }
+            } else {
+                for (File archive : archives) {
+                    if (!archive.isFile()) {
+                        throw new MojoExecutionException("Archive " + archive + " does not exist");
+                    }
+                    addIfArchiveOrDirectory(paths, archive);
+                }
             }
 
             if(log.isDebugEnabled()){
                 log.debug("Using dependencies: " + paths);
             }
             List<String> ignoredPackages = getIgnoredPackages();
-            Report report = new ClassFileVisitor().generateReportForJar(paths, ignoredPackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+            IndexCache indexCache = useIndexCache ? new IndexCache(indexCacheDirectory.toPath()) : null;
+            ClassFileVisitor classFileVisitor = new ClassFileVisitor(indexCache);
+            classFileVisitor.setParallelism(parallelism);
+            classFileVisitor.setArchiveParallelism(archiveParallelism);
+            classFileVisitor.setIoBackend(ioBackend);
+            classFileVisitor.setScanProfile(scanProfile);
+            classFileVisitor.setIncremental(incremental);
+            if (referenceMemoryBudget > 0) {
+                classFileVisitor.setReferenceMemoryBudget(referenceMemoryBudget * 1024L * 1024L);
+                classFileVisitor.setSpillDirectory(spillDirectory.toPath());
+                if (writeSeenAndVisitedToFile || writeSnapshot) {
+                    log.warn("References are spilled to disk, so only the references of missing links are written to the report directory");
+                }
+            } else if (shareIndexInBuild && session != null) {
+                classFileVisitor.setSessionIndex(getSessionIndex());
+            }
+            if (reachability) {
+                if (archives.isEmpty() && entryPoints.isEmpty() && paths.stream().noneMatch(path -> new File(path).isDirectory())) {
+                    log.warn("Reachability analysis has no classes to start from. Configure entryPoints, or include the output directory.");
+                }
+                classFileVisitor.setReachability(true);
+                classFileVisitor.setEntryPoints(entryPoints);
+            }
+            UpgradeDiff upgradeDiff = null;
+            Report report;
+            if (upgrades.isEmpty()) {
+                report = classFileVisitor.generateReportForJar(paths, ignoredPackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+            } else {
+                if (reachability) {
+                    log.warn("Reachability analysis is not used when upgrades are compared");
+                }
+                upgradeDiff = new UpgradeDiff(classFileVisitor, paths, ignoredPackages, ignoreReferencesInPackages, ignoreAnnotationReferences);
+                report = upgradeDiff.getBaseline();
+            }
+            ScanMetrics metrics = classFileVisitor.getMetrics();
 
+            long start = System.nanoTime();
             Map<String, Set<String>> methodsMissing = report.getMethodsMissing();
             boolean noMethodsMissing = methodsMissing.isEmpty();
-            if(noMethodsMissing){
+            if(report.getScanProfile() == ScanProfile.CLASSES){
+                log.info("Methods are not checked with the CLASSES scan profile");
+            } else if(noMethodsMissing){
                 log.info("No missing methods");
             } else {
                 log.warn("Missing methods detected. Reports can be found in " + reportDirectory.getAbsolutePath());
@@ -154,7 +390,15 @@ public class FindTheMissingLinksMojo extends AbstractMojo {
             } else {
                 log.warn("Missing classes detected. Reports can be found in " + reportDirectory.getAbsolutePath());
             }
+            metrics.recordPhase("missingLinks", System.nanoTime() - start);
+
+            start = System.nanoTime();
             writeReport(report, classesMissing, methodsMissing, ignoredPackages);
+            metrics.recordPhase("report", System.nanoTime() - start);
+            if (upgradeDiff != null) {
+                writeUpgradeDiff(upgradeDiff, paths, pathsByDependency);
+            }
+            writeMetrics(metrics);
 
             if(failOnMissing && (!noMethodsMissing || !noClassesMissing)){
                 throw new MojoFailureException("Missing classes or methods detected. Reports can be found in " + reportDirectory.getAbsolutePath());
@@ -165,70 +409,116 @@ public class FindTheMissingLinksMojo extends AbstractMojo {
     }
 
     private void writeReport(Report report, Map<String, Set<String>> classesMissing, Map<String, Set<String>> methodsMissing, List<String> ignoredPackages) throws IOException {
-        reportDirectory.mkdirs();
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(new File(reportDirectory, MISSING_LINKS_REPORT)))){
-            writer.write("Find the missing links Maven plugin report");
-            writer.newLine();
-            writer.newLine();
+        ReportFiles reportFiles = newReportFiles();
+        reportFiles.setWriteSeenAndVisited(writeSeenAndVisitedToFile);
+        reportFiles.setWriteSnapshot(writeSnapshot);
+        reportFiles.setCallPathMaxDepth(callPathMaxDepth);
+        reportFiles.setCallPathsPerMethod(callPathsPerMethod);
+        reportFiles.write(report, classesMissing, methodsMissing, ignoredPackages);
+    }
 
-            writer.write("Packages ignored:");
+    private void writeMetrics(ScanMetrics metrics) throws IOException {
+        newReportFiles().writeMetrics(metrics);
+        getLog().info("Time spent, and the slowest dependencies (see also " + METRICS + "):");
+        for (String line : metrics.getSummary(5)) {
+            getLog().info("   " + line);
+        }
+    }
+
+    private ReportFiles newReportFiles() {
+        ReportFiles reportFiles = new ReportFiles(reportDirectory.toPath(), compressReports);
+        reportFiles.setTitle("Find the missing links Maven plugin report");
+        return reportFiles;
+    }
+
+    /**
+     * Compares each upgrade with the project's dependencies, and writes what changes to upgrade-diff.txt.
+     */
+    private void writeUpgradeDiff(UpgradeDiff upgradeDiff, List<String> paths, Map<String, String> pathsByDependency) throws IOException, MojoExecutionException {
+        Log log = getLog();
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(new File(reportDirectory, UPGRADE_DIFF)))){
+            writer.write("Find the missing links Maven plugin upgrade diff");
             writer.newLine();
-            for (String ignoredPackage : ignoredPackages) {
-                writer.write("   " + ignoredPackage);
+            for (String upgrade : upgrades) {
+                List<String> candidate = new ArrayList<>(paths);
+                for (String coordinates : upgrade.split(",")) {
+                    DefaultArtifact artifact = new DefaultArtifact(coordinates.trim());
+                    String path = resolve(artifact).getAbsolutePath();
+                    String current = pathsByDependency.get(artifact.getGroupId() + ":" + artifact.getArtifactId());
+                    int index = current == null ? -1 : candidate.indexOf(current);
+                    if (index < 0) {
+                        candidate.add(path);
+                    } else {
+                        candidate.set(index, path);
+                    }
+                }
+                UpgradeDiff.Changes changes = upgradeDiff.compare(candidate);
+
                 writer.newLine();
-            }
-            writer.newLine();
-            if(!classesMissing.isEmpty()){
-                writer.write("Classes missing (see also " + MISSING_CLASS_REFERENCES + "):");
+                writer.write("Upgrade " + upgrade);
                 writer.newLine();
-
-                for (String missingClass : classesMissing.keySet()) {
-                    writer.write("   " + missingClass);
+                writeLines(writer, "Removed:", changes.getRemoved());
+                writeLines(writer, "Added:", changes.getAdded());
+                if (changes.isEmpty()) {
+                    writer.write("   No classes or methods missing or resolved");
                     writer.newLine();
                 }
-            } else {
-                writer.write("No classes missing");
+                writeLines(writer, "Classes missing:", changes.getClassesMissing().keySet());
+                writeLines(writer, "Methods missing:", changes.getMethodsMissing().keySet());
+                writeLines(writer, "Classes resolved:", changes.getClassesResolved());
+                writeLines(writer, "Methods resolved:", changes.getMethodsResolved());
+
+                String summary = String.format("Upgrade %s: %d classes and %d methods missing, %d classes and %d methods resolved",
+                        upgrade, changes.getClassesMissing().size(), changes.getMethodsMissing().size(),
+                        changes.getClassesResolved().size(), changes.getMethodsResolved().size());
+                if (changes.getClassesMissing().isEmpty() && changes.getMethodsMissing().isEmpty()) {
+                    log.info(summary);
+                } else {
+                    log.warn(summary + ". See " + new File(reportDirectory, UPGRADE_DIFF).getAbsolutePath());
+                }
             }
+        }
+    }
 
-            writer.newLine();
-            if(!methodsMissing.isEmpty()){
-                writer.write("Methods missing (see also " + MISSING_METHOD_REFERENCES + "):");
-                writer.newLine();
+    private File resolve(DefaultArtifact artifact) throws MojoExecutionException {
+        try {
+            ArtifactRequest request = new ArtifactRequest(artifact, remoteRepositories, null);
+            return repositorySystem.resolveArtifact(session.getRepositorySession(), request).getArtifact().getFile();
+        } catch (ArtifactResolutionException e) {
+            throw new MojoExecutionException("Could not resolve upgrade " + artifact, e);
+        }
+    }
 
-                for (String missingMethod : methodsMissing.keySet()) {
-                    writer.write("   " + missingMethod);
-                    writer.newLine();
-                }
-            } else {
-                writer.write("No methods missing");
-            }
+    private static void writeLines(BufferedWriter writer, String heading, Collection<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
         }
-        writeJsonToFile(classesMissing, new File(reportDirectory, MISSING_CLASS_REFERENCES));
-        writeJsonToFile(methodsMissing, new File(reportDirectory, MISSING_METHOD_REFERENCES));
-
-        if(writeSeenAndVisitedToFile){
-            writeJsonToFile(report.getClassesReferenced(), new File(reportDirectory, CLASSES_REFERENCED));
-            writeJsonToFile(report.getMethodsReferenced(), new File(reportDirectory, METHOD_REFERENCED));
-            List<CallTreeReport.CallNode> methodsMissingTree = CallTreeReport.generateCallTree(methodsMissing, report.getMethodsReferenced());
-            writeToFile(METHOD_CALL_TREE, CallTreeReport.getCallTreeAsList(methodsMissingTree));
-            writeToFile(CLASSES_VISITED, report.getClassesVisited());
-            writeToFile(METHOD_VISITED, report.getMethodsVisited());
+        writer.write("   " + heading);
+        writer.newLine();
+        for (String line : sorted(lines)) {
+            writer.write("      " + line);
+            writer.newLine();
         }
     }
 
-    private void writeToFile(String targetFile, Collection<String> entries) throws IOException {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(new File(reportDirectory, targetFile)))) {
-            for (String referencedClass : entries) {
-                writer.write(referencedClass);
-                writer.newLine();
-            }
+    /**
+     * @return the index shared by all executions of this plugin in the build, kept in the repository session.
+     * It is keyed by its class, so executions of other versions of the plugin get their own.
+     */
+    private SessionIndex getSessionIndex() {
+        SessionData data = session.getRepositorySession().getData();
+        SessionIndex index = (SessionIndex) data.get(SessionIndex.class);
+        while (index == null) {
+            data.set(SessionIndex.class, null, new SessionIndex());
+            index = (SessionIndex) data.get(SessionIndex.class);
         }
+        return index;
     }
 
-    private void writeJsonToFile(Object methodsMissing, File resultFile) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        mapper.writeValue(resultFile, methodsMissing);
+    private static List<String> sorted(Collection<String> strings) {
+        List<String> sorted = new ArrayList<>(strings);
+        Collections.sort(sorted);
+        return sorted;
     }
 
     private List<String> getIgnoredPackages() {
@@ -251,10 +541,16 @@ public class FindTheMissingLinksMojo extends AbstractMojo {
         return new ArrayList<>(ignoredPackages);
     }
 
-    private void addIfJarOrWar(List<String> paths, File file) {
+    /**
+     * @return true if {@code file} was added to {@code paths}.
+     */
+    private boolean addIfArchiveOrDirectory(List<String> paths, File file) {
         String fileName = file.getName();
-        if (fileName.endsWith(".jar") || fileName.endsWith(".war")) {
+        // Dependencies on other modules in the reactor may be resolved to their output directories.
+        if (file.isDirectory() || fileName.endsWith(".jar") || fileName.endsWith(".war") || fileName.endsWith(".ear")) {
             paths.add(file.getAbsolutePath());
+            return true;
         }
+        return false;
     }
 }